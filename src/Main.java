@@ -1,16 +1,16 @@
 import model.*;
 import service.*;
-import parser.CSVRouteParser;
-import persistence.DataLoader;
+import repository.RouteCatalogue;
+import repository.StationIndex;
 
-import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.*;
 
 public class Main {
-    private static List<Route> allRoutes;
+    private static StationIndex stationIndex;
+    private static SearchService searchService;
     private static BookingService bookingService;
     private static Scanner scanner;
     private static List<Connection> foundConnections;
@@ -20,16 +20,29 @@ public class Main {
         foundConnections = new ArrayList<>();
 
         try {
-            // Load train route data from CSV into database on application startup
-            System.out.println("=== Loading train route data into database ===");
-            DataLoader.loadRoutes("src/db/eu_rail_network.csv");
-            System.out.println("=== Database loading complete ===\n");
+            // Load train route data from CSV into the database and into memory on startup.
+            // The file is parsed once and both get the same routes; later starts read the
+            // catalogue from a snapshot of the file instead and leave the database as it is,
+            // as long as it still holds the routes, until the file changes.
+            System.out.println("=== Loading train route data ===");
+            StationRegistry stationRegistry = new StationRegistry();
+            RouteCatalogue catalogue = new RouteCatalogue(stationRegistry);
+            RouteImportService importService = new RouteImportService(stationRegistry);
+            importService.importRoutes("src/db/eu_rail_network.csv", catalogue, "src/db/eu_rail_network.snapshot");
+            if (importService.wasDatabaseLoaded()) {
+                System.out.println("=== Database loading complete ===\n");
+            } else {
+                System.out.println("=== Database already holds the routes, nothing loaded ===\n");
+            }
+            stationIndex = new StationIndex(catalogue);
+            int collisions = stationRegistry.getCodeCollisions().size();
+            if (collisions > 0) {
+                System.out.println("Gave distinct station codes to cities in " + collisions
+                        + " groups sharing their first three letters.");
+            }
+            System.out.println("Loaded " + catalogue.getRouteCount() + " routes into memory.\n");
 
-            // Load routes into memory for searching
-            System.out.println("=== Loading routes into memory ===");
-            CSVRouteParser parser = new CSVRouteParser();
-            allRoutes = parser.parseRoutes("src/db/eu_rail_network.csv");
-            System.out.println("Loaded " + allRoutes.size() + " routes into memory.\n");
+            searchService = new SearchService(catalogue);
 
             bookingService = new BookingService();
 
@@ -43,6 +56,9 @@ public class Main {
             if (scanner != null) {
                 scanner.close();
             }
+            if (searchService != null) {
+                searchService.close();
+            }
         }
     }
 
@@ -109,7 +125,11 @@ public class Main {
 
         // Search for connections
         System.out.println("\nSearching for connections...");
-        foundConnections = findConnections(origin, destination, travelDate);
+        SearchResult result = searchService.findConnections(origin, destination, travelDate);
+        foundConnections = result.getConnections();
+        if (result.isTimedOut()) {
+            System.out.println("The search took too long; showing the connections found so far.");
+        }
 
         if (foundConnections.isEmpty()) {
             System.out.println("\nNo connections found for your criteria.");
@@ -124,7 +144,7 @@ public class Main {
             System.out.println("Transfers: " + conn.getNumberOfTransfers());
             System.out.println("Duration: " + conn.getFormattedTotalDuration());
             System.out.println("Departure: " + conn.getTotalDepartureTime());
-            System.out.println("Arrival: " + conn.getTotalArrivalTime());
+            System.out.println("Arrival: " + conn.getTotalArrivalTime() + dayOffsetSuffix(conn.getArrivalDayOffset()));
             System.out.println("1st Class: " + conn.getTotalPriceFirstClass());
             System.out.println("2nd Class: " + conn.getTotalPriceSecondClass());
             
@@ -134,11 +154,17 @@ public class Main {
                 Route r = routes.get(j);
                 System.out.println("  Leg " + (j + 1) + ": " + r.getDepartureStation().getName() + 
                                  " → " + r.getArrivalStation().getName() + 
-                                 " (" + r.getDepartureTime() + " - " + r.getArrivalTime() + ")");
+                                 " (" + r.getDepartureTime() + " - " + r.getArrivalTime() +
+                                 dayOffsetSuffix(r.getArrivalDayOffset()) + ")");
             }
         }
     }
 
+    // " (+1d)" for arrivals on a later day than the departure, empty otherwise
+    private static String dayOffsetSuffix(int dayOffset) {
+        return dayOffset > 0 ? " (+" + dayOffset + "d)" : "";
+    }
+
     private static void bookTrip() {
         System.out.println("\n=== BOOK A TRIP ===");
 
@@ -303,23 +329,16 @@ public class Main {
     }
 
     private static Station findStation(String input) {
-        input = input.toLowerCase();
-        for (Route route : allRoutes) {
-            Station dep = route.getDepartureStation();
-            Station arr = route.getArrivalStation();
-            
-            if (dep.getCity().toLowerCase().contains(input) || 
-                dep.getName().toLowerCase().contains(input) ||
-                dep.getCode().toLowerCase().equals(input)) {
-                return dep;
-            }
-            if (arr.getCity().toLowerCase().contains(input) || 
-                arr.getName().toLowerCase().contains(input) ||
-                arr.getCode().toLowerCase().equals(input)) {
-                return arr;
-            }
+        List<Station> matches = stationIndex.findByPrefix(input);
+        if (matches.isEmpty()) {
+            // Fall back to matching anywhere in the name, e.g. "lona" for Barcelona
+            matches = stationIndex.findContaining(input);
         }
-        return null;
+        if (matches.isEmpty()) {
+            // Last resort for typos and missing accents, e.g. "Dusseldorf"
+            matches = stationIndex.findSimilar(input, 1);
+        }
+        return matches.isEmpty() ? null : matches.get(0);
     }
 
     private static LocalDate getTravelDate() {
@@ -342,114 +361,4 @@ public class Main {
             return null;
         }
     }
-
-    private static List<Connection> findConnections(Station origin, Station destination, LocalDate travelDate) {
-        List<Connection> connections = new ArrayList<>();
-        DayOfWeek dayOfWeek = travelDate.getDayOfWeek();
-
-        // Direct connections (1 leg)
-        for (Route route : allRoutes) {
-            if (route.getDepartureStation().equals(origin) &&
-                route.getArrivalStation().equals(destination) &&
-                route.getDayPattern().isOperatingOn(dayOfWeek)) {
-                try {
-                    Connection conn = new Connection(List.of(route));
-                    if (conn.respectsLayoverPolicy()) {
-                        connections.add(conn);
-                    }
-                } catch (Exception e) {
-                    // Skip invalid connections
-                }
-            }
-        }
-
-        // 1-stop connections (2 legs)
-        for (Route r1 : allRoutes) {
-            if (!r1.getDepartureStation().equals(origin) ||
-                !r1.getDayPattern().isOperatingOn(dayOfWeek)) {
-                continue;
-            }
-
-            Station intermediate = r1.getArrivalStation();
-            if (intermediate.equals(destination)) {
-                continue; // Already handled as direct
-            }
-
-            for (Route r2 : allRoutes) {
-                if (r2.getDepartureStation().equals(intermediate) &&
-                    r2.getArrivalStation().equals(destination) &&
-                    r2.getDayPattern().isOperatingOn(dayOfWeek)) {
-                    
-                    // Check if r2 departs after r1 arrives
-                    if (r2.getDepartureTime().isAfter(r1.getArrivalTime()) ||
-                        r2.getDepartureTime().equals(r1.getArrivalTime())) {
-                        try {
-                            Connection conn = new Connection(List.of(r1, r2));
-                            if (conn.respectsLayoverPolicy()) {
-                                connections.add(conn);
-                            }
-                        } catch (Exception e) {
-                            // Skip invalid connections
-                        }
-                    }
-                }
-            }
-        }
-
-        // 2-stop connections (3 legs)
-        for (Route r1 : allRoutes) {
-            if (!r1.getDepartureStation().equals(origin) ||
-                !r1.getDayPattern().isOperatingOn(dayOfWeek)) {
-                continue;
-            }
-
-            Station stop1 = r1.getArrivalStation();
-            if (stop1.equals(destination)) {
-                continue;
-            }
-
-            for (Route r2 : allRoutes) {
-                if (!r2.getDepartureStation().equals(stop1) ||
-                    !r2.getDayPattern().isOperatingOn(dayOfWeek)) {
-                    continue;
-                }
-
-                Station stop2 = r2.getArrivalStation();
-                if (stop2.equals(destination) || stop2.equals(origin)) {
-                    continue;
-                }
-
-                // Check timing
-                if (!r2.getDepartureTime().isAfter(r1.getArrivalTime()) &&
-                    !r2.getDepartureTime().equals(r1.getArrivalTime())) {
-                    continue;
-                }
-
-                for (Route r3 : allRoutes) {
-                    if (r3.getDepartureStation().equals(stop2) &&
-                        r3.getArrivalStation().equals(destination) &&
-                        r3.getDayPattern().isOperatingOn(dayOfWeek)) {
-                        
-                        // Check timing
-                        if (r3.getDepartureTime().isAfter(r2.getArrivalTime()) ||
-                            r3.getDepartureTime().equals(r2.getArrivalTime())) {
-                            try {
-                                Connection conn = new Connection(List.of(r1, r2, r3));
-                                if (conn.respectsLayoverPolicy()) {
-                                    connections.add(conn);
-                                }
-                            } catch (Exception e) {
-                                // Skip invalid connections
-                            }
-                        }
-                    }
-                }
-            }
-        }
-
-        // Sort by duration (shortest first)
-        connections.sort(Comparator.comparing(Connection::getTotalDurationMinutes));
-
-        return connections;
-    }
 }
@@ -34,18 +34,25 @@ public class Connection {
 
     private void calculateTotalPrices() {
         if (!routes.isEmpty()) {
-            Money firstClassTotal = new Money(routes.get(0).getPriceFirstClass().getAmount(),
-                                            routes.get(0).getPriceFirstClass().getCurrency());
-            Money secondClassTotal = new Money(routes.get(0).getPriceSecondClass().getAmount(),
-                                             routes.get(0).getPriceSecondClass().getCurrency());
+            // Sum the legs in cents and create the totals once, instead of a Money per leg
+            Money firstPrice = routes.get(0).getPriceFirstClass();
+            Money secondPrice = routes.get(0).getPriceSecondClass();
+            long firstClassTotal = firstPrice.getMinorUnits();
+            long secondClassTotal = secondPrice.getMinorUnits();
 
             for (int i = 1; i < routes.size(); i++) {
-                firstClassTotal = firstClassTotal.add(routes.get(i).getPriceFirstClass());
-                secondClassTotal = secondClassTotal.add(routes.get(i).getPriceSecondClass());
+                Money first = routes.get(i).getPriceFirstClass();
+                Money second = routes.get(i).getPriceSecondClass();
+                if (!firstPrice.getCurrency().equals(first.getCurrency()) ||
+                    !secondPrice.getCurrency().equals(second.getCurrency())) {
+                    throw new IllegalArgumentException("Cannot add different currencies");
+                }
+                firstClassTotal = Math.addExact(firstClassTotal, first.getMinorUnits());
+                secondClassTotal = Math.addExact(secondClassTotal, second.getMinorUnits());
             }
 
-            this.totalPriceFirstClass = firstClassTotal;
-            this.totalPriceSecondClass = secondClassTotal;
+            this.totalPriceFirstClass = Money.ofMinorUnits(firstClassTotal, firstPrice.getCurrency());
+            this.totalPriceSecondClass = Money.ofMinorUnits(secondClassTotal, secondPrice.getCurrency());
         }
     }
 
@@ -57,11 +64,9 @@ public class Connection {
        }
 
         for (int i = 0; i < routes.size() -1; i++) {
-            var arr = routes.get(i).getArrivalTime();
-            var dep = routes.get(i+1).getDepartureTime();
-            int gap = (int) java.time.Duration.between(arr,dep).toMinutes();
+            int gap = routes.get(i+1).getDepartureMinuteOfDay() - routes.get(i).getArrivalMinuteOfDay();
             if (gap <= 0) {
-                gap += 24*60;
+                gap += Route.MINUTES_PER_DAY;
             }
             minutes += gap;  
         }  
@@ -89,6 +94,16 @@ public class Connection {
         return totalArrivalTime;
     }
 
+    /**
+     * Returns on which day after the departure day the connection arrives, counting
+     * overnight legs and layovers: 0 for a same-day arrival, 1 for the next day, and so on.
+     *
+     * @return the arrival day offset
+     */
+    public int getArrivalDayOffset() {
+        return (routes.get(0).getDepartureMinuteOfDay() + totalDurationMinutes) / Route.MINUTES_PER_DAY;
+    }
+
     public Money getTotalPriceFirstClass() {
         return totalPriceFirstClass;
     }
@@ -113,14 +128,11 @@ public class Connection {
             return true;
         }
 
-        List<Integer> layovers = getLayoverDurationsMinutes();
-
         // Check each layover using LayoverPolicy
-        for (int i = 0; i < layovers.size(); i++) {
-            int layoverMinutes = layovers.get(i);
-            LocalTime arrivalTime = routes.get(i).getArrivalTime();
+        for (int i = 0; i < routes.size() - 1; i++) {
+            int arrivalMinute = routes.get(i).getArrivalMinuteOfDay();
             
-            if (!LayoverPolicy.isAcceptableLayover(layoverMinutes, arrivalTime)) {
+            if (!LayoverPolicy.isAcceptableLayover(layoverMinutes(i), arrivalMinute)) {
                 return false;
             }
         }
@@ -132,17 +144,18 @@ public class Connection {
         java.util.ArrayList<Integer> layovers = new java.util.ArrayList<>();
 
         for (int i = 0; i < routes.size() - 1; i++) {
-            LocalTime arr = routes.get(i).getArrivalTime();
-            LocalTime dep = routes.get(i + 1).getDepartureTime();
-
-            int minutes = (int) java.time.Duration.between(arr, dep).toMinutes();
+            layovers.add(layoverMinutes(i));
+        }
+        return layovers;
+    }
 
-            if (minutes < 0) {
-                minutes += 24 * 60;
-            }
+    // Minutes between the arrival of leg i and the departure of leg i + 1
+    private int layoverMinutes(int i) {
+        int minutes = routes.get(i + 1).getDepartureMinuteOfDay() - routes.get(i).getArrivalMinuteOfDay();
 
-            layovers.add(minutes);
+        if (minutes < 0) {
+            minutes += Route.MINUTES_PER_DAY;
         }
-        return layovers;
+        return minutes;
     }
 }
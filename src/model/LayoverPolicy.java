@@ -11,6 +11,9 @@ import java.time.LocalTime;
  * - After hours (22:00-6:00): layovers should be 30 minutes or less
  * 
  * This class matches the domain model from Iteration 3.
+ * 
+ * The constants below are the default rules. They can be changed with configure, which
+ * also rebuilds the TransferWindows table the searches use to find boardable departures.
  */
 public class LayoverPolicy {
     /**
@@ -41,8 +44,62 @@ public class LayoverPolicy {
      */
     public static final LocalTime DAYTIME_END = LocalTime.of(22, 0);
 
+    private static volatile TransferWindows transferWindows = new TransferWindows(
+        MIN_DAYTIME_LAYOVER_MINUTES, MAX_DAYTIME_LAYOVER_MINUTES, MAX_AFTERHOURS_LAYOVER_MINUTES,
+        DAYTIME_START, DAYTIME_END);
+
     private LayoverPolicy() {}
 
+    /**
+     * Changes the layover rules and rebuilds the transfer window table. Searches that are
+     * already running keep the table they started with.
+     * 
+     * @param minDaytimeLayoverMinutes minimum layover during the day
+     * @param maxDaytimeLayoverMinutes maximum layover during the day
+     * @param maxAfterHoursLayoverMinutes maximum layover after hours
+     * @param daytimeStart start of daytime hours
+     * @param daytimeEnd end of daytime hours
+     */
+    public static synchronized void configure(int minDaytimeLayoverMinutes, int maxDaytimeLayoverMinutes,
+                                              int maxAfterHoursLayoverMinutes,
+                                              LocalTime daytimeStart, LocalTime daytimeEnd) {
+        if (daytimeStart == null || daytimeEnd == null) {
+            throw new IllegalArgumentException("Daytime hours cannot be null");
+        }
+        if (!daytimeStart.isBefore(daytimeEnd)) {
+            throw new IllegalArgumentException("Daytime must start before it ends");
+        }
+        if (minDaytimeLayoverMinutes < 0 || maxAfterHoursLayoverMinutes < 0) {
+            throw new IllegalArgumentException("Layover durations cannot be negative");
+        }
+        if (maxDaytimeLayoverMinutes < minDaytimeLayoverMinutes) {
+            throw new IllegalArgumentException("Maximum daytime layover cannot be less than the minimum");
+        }
+        if (maxDaytimeLayoverMinutes >= Route.MINUTES_PER_DAY ||
+            maxAfterHoursLayoverMinutes >= Route.MINUTES_PER_DAY) {
+            throw new IllegalArgumentException("Layovers must be shorter than a day");
+        }
+        transferWindows = new TransferWindows(minDaytimeLayoverMinutes, maxDaytimeLayoverMinutes,
+                                              maxAfterHoursLayoverMinutes, daytimeStart, daytimeEnd);
+    }
+
+    /**
+     * Restores the default rules given by the constants of this class.
+     */
+    public static void resetToDefaults() {
+        configure(MIN_DAYTIME_LAYOVER_MINUTES, MAX_DAYTIME_LAYOVER_MINUTES, MAX_AFTERHOURS_LAYOVER_MINUTES,
+                  DAYTIME_START, DAYTIME_END);
+    }
+
+    /**
+     * Returns the current rules, precomputed for every arrival minute of the day.
+     * 
+     * @return the transfer window table of the current rules
+     */
+    public static TransferWindows getTransferWindows() {
+        return transferWindows;
+    }
+
     /**
      * Checks if a layover duration is acceptable according to the policy.
      * 
@@ -55,24 +112,54 @@ public class LayoverPolicy {
             return false;
         }
 
-        if (isAfterHours(layoverTime)) {
-            // After hours: maximum 30 minutes
-            return layoverMinutes <= MAX_AFTERHOURS_LAYOVER_MINUTES;
+        TransferWindows rules = transferWindows;
+        if (isAfterHours(layoverTime, rules)) {
+            // After hours: maximum 30 minutes by default
+            return layoverMinutes <= rules.getMaxAfterHoursLayoverMinutes();
         } else {
-            // Daytime: 1-2 hours (60-120 minutes)
-            return layoverMinutes >= MIN_DAYTIME_LAYOVER_MINUTES && 
-                   layoverMinutes <= MAX_DAYTIME_LAYOVER_MINUTES;
+            // Daytime: 1-2 hours (60-120 minutes) by default
+            return layoverMinutes >= rules.getMinDaytimeLayoverMinutes() && 
+                   layoverMinutes <= rules.getMaxDaytimeLayoverMinutes();
         }
     }
 
     /**
-     * Checks if a given time is considered "after hours" (outside 6:00-22:00).
+     * Checks if a layover duration is acceptable, with the arrival time given in minutes
+     * from midnight. Same rules as isAcceptableLayover(int, LocalTime), for callers that
+     * keep times as plain minutes.
+     * 
+     * @param layoverMinutes the duration of the layover in minutes
+     * @param arrivalMinuteOfDay the arrival time of the first route, in minutes from midnight
+     * @return true if the layover is acceptable, false otherwise
+     */
+    public static boolean isAcceptableLayover(int layoverMinutes, int arrivalMinuteOfDay) {
+        return transferWindows.isAcceptable(layoverMinutes, arrivalMinuteOfDay);
+    }
+
+    /**
+     * Checks if a time given in minutes from midnight is "after hours" (outside daytime
+     * hours, 6:00-22:00 by default).
+     * 
+     * @param minuteOfDay the time to check, in minutes from midnight
+     * @return true if the time is before 6:00 or after 22:00, false otherwise
+     */
+    public static boolean isAfterHours(int minuteOfDay) {
+        return transferWindows.isAfterHours(minuteOfDay);
+    }
+
+    /**
+     * Checks if a given time is considered "after hours" (outside daytime hours,
+     * 6:00-22:00 by default).
      * 
      * @param time the time to check
      * @return true if the time is before 6:00 or after 22:00, false otherwise
      */
     public static boolean isAfterHours(LocalTime time) {
-        return time.isBefore(DAYTIME_START) || time.isAfter(DAYTIME_END);
+        return isAfterHours(time, transferWindows);
+    }
+
+    private static boolean isAfterHours(LocalTime time, TransferWindows rules) {
+        return time.isBefore(rules.getDaytimeStart()) || time.isAfter(rules.getDaytimeEnd());
     }
     
     /**
@@ -81,8 +168,24 @@ public class LayoverPolicy {
      * @return a string describing the policy rules
      */
     public static String getPolicyDescription() {
+        TransferWindows rules = transferWindows;
+        String daytime = formatTime(rules.getDaytimeStart()) + "-" + formatTime(rules.getDaytimeEnd());
+        String afterHours = formatTime(rules.getDaytimeEnd()) + "-" + formatTime(rules.getDaytimeStart());
         return "Layover Policy: " +
-               "During the day (6:00-22:00), layovers must be 1-2 hours. " +
-               "After hours (22:00-6:00), layovers must be 30 minutes or less.";
+               "During the day (" + daytime + "), layovers must be " +
+               formatRange(rules.getMinDaytimeLayoverMinutes(), rules.getMaxDaytimeLayoverMinutes()) + ". " +
+               "After hours (" + afterHours + "), layovers must be " +
+               rules.getMaxAfterHoursLayoverMinutes() + " minutes or less.";
+    }
+
+    private static String formatTime(LocalTime time) {
+        return time.getHour() + ":" + String.format("%02d", time.getMinute());
+    }
+
+    private static String formatRange(int minMinutes, int maxMinutes) {
+        if (minMinutes % 60 == 0 && maxMinutes % 60 == 0) {
+            return minMinutes / 60 + "-" + maxMinutes / 60 + " hours";
+        }
+        return minMinutes + "-" + maxMinutes + " minutes";
     }
 }
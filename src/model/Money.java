@@ -2,22 +2,65 @@ package model;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-public class Money {
-    private final BigDecimal amount;
+/**
+ * An amount of money with two decimals, stored as a long number of minor units (cents)
+ * and an interned currency code. Arithmetic and comparisons work on the long value and
+ * stay exact; getAmount() creates a BigDecimal only when one is needed, e.g. to store
+ * the amount in the database.
+ */
+public class Money implements Comparable<Money> {
+    private static final int SCALE = 2;
+    private static final ConcurrentMap<String, String> CURRENCIES = new ConcurrentHashMap<>();
+
+    private final long minorUnits;
     private final String currency;
 
     public Money(BigDecimal amount, String currency) {
-        this.amount = amount.setScale(2, RoundingMode.HALF_UP);
-        this.currency = currency;
+        this(toMinorUnits(amount), currency);
     }
 
     public Money(double amount, String currency) {
         this(BigDecimal.valueOf(amount), currency);
     }
 
+    private Money(long minorUnits, String currency) {
+        this.minorUnits = minorUnits;
+        this.currency = currency != null ? CURRENCIES.computeIfAbsent(currency, c -> c) : null;
+    }
+
+    /**
+     * Creates an amount from a number of minor units, e.g. ofMinorUnits(1250, "EUR") is 12.50 EUR.
+     *
+     * @param minorUnits the amount in cents
+     * @param currency the currency code
+     * @return the amount
+     */
+    public static Money ofMinorUnits(long minorUnits, String currency) {
+        return new Money(minorUnits, currency);
+    }
+
+    private static long toMinorUnits(BigDecimal amount) {
+        try {
+            return amount.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Amount out of range: " + amount, e);
+        }
+    }
+
     public BigDecimal getAmount() {
-        return amount;
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    /**
+     * Returns the amount in minor units (cents).
+     *
+     * @return the amount times 100
+     */
+    public long getMinorUnits() {
+        return minorUnits;
     }
 
     public String getCurrency() {
@@ -25,21 +68,37 @@ public class Money {
     }
 
     public Money add(Money other) {
-        if (!this.currency.equals(other.currency)) {
-            throw new IllegalArgumentException("Cannot add different currencies");
-        }
-        return new Money(this.amount.add(other.amount), this.currency);
+        checkSameCurrency(other, "add");
+        return new Money(Math.addExact(this.minorUnits, other.minorUnits), this.currency);
     }
 
     public Money subtract(Money other) {
-        if (!this.currency.equals(other.currency)) {
-            throw new IllegalArgumentException("Cannot subtract different currencies");
-        }
-        return new Money(this.amount.subtract(other.amount), this.currency);
+        checkSameCurrency(other, "subtract");
+        return new Money(Math.subtractExact(this.minorUnits, other.minorUnits), this.currency);
     }
 
     public Money multiply(double factor) {
-        return new Money(this.amount.multiply(BigDecimal.valueOf(factor)), this.currency);
+        return new Money(getAmount().multiply(BigDecimal.valueOf(factor)), this.currency);
+    }
+
+    /**
+     * Compares two amounts of the same currency.
+     *
+     * @param other the amount to compare with
+     * @return a negative number, zero or a positive number if this amount is smaller, equal or larger
+     * @throws IllegalArgumentException if the currencies differ
+     */
+    @Override
+    public int compareTo(Money other) {
+        checkSameCurrency(other, "compare");
+        return Long.compare(this.minorUnits, other.minorUnits);
+    }
+
+    private void checkSameCurrency(Money other, String operation) {
+        // Interned, so the same currency is always the same String
+        if (this.currency != other.currency) {
+            throw new IllegalArgumentException("Cannot " + operation + " different currencies");
+        }
     }
 
     @Override
@@ -47,16 +106,16 @@ public class Money {
         if (this == obj) return true;
         if (obj == null || getClass() != obj.getClass()) return false;
         Money money = (Money) obj;
-        return amount.equals(money.amount) && currency.equals(money.currency);
+        return minorUnits == money.minorUnits && currency.equals(money.currency);
     }
 
     @Override
     public int hashCode() {
-        return amount.hashCode() + currency.hashCode();
+        return Long.hashCode(minorUnits) + currency.hashCode();
     }
 
     @Override
     public String toString() {
-        return amount + " " + currency;
+        return getAmount() + " " + currency;
     }
 }
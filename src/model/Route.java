@@ -1,10 +1,11 @@
 package model;
 
-import java.time.Duration;
 import java.time.LocalTime;
 
 // for iteration1 
 public class Route {
+    public static final int MINUTES_PER_DAY = 24 * 60;
+
     private String routeId;
     private Station departureStation;
     private Station arrivalStation;
@@ -15,12 +16,34 @@ public class Route {
     private Money priceSecondClass;
     private DaySet dayPattern;
 
+    // Times as minutes from midnight, with the number of days between departure and
+    // arrival, so duration and layover math stays on ints
+    private int departureMinuteOfDay;
+    private int arrivalMinuteOfDay;
+    private int arrivalDayOffset;
     private int tripDurationMinutes;
     
     // REVOIR SI ROUTEID SHOULD BE IN PARAM
+    /**
+     * Creates a route arriving on the day of departure, or on the next day if the arrival
+     * time is not after the departure time (to the minute).
+     */
     public Route(String routeId, Station departureStation, Station arrivalStation,
                  LocalTime departureTime, LocalTime arrivalTime, TrainType trainType,
                  Money priceFirstClass, Money priceSecondClass, DaySet dayPattern) {
+        this(routeId, departureStation, arrivalStation, departureTime, arrivalTime,
+             inferDayOffset(departureTime, arrivalTime), trainType, priceFirstClass, priceSecondClass, dayPattern);
+    }
+
+    /**
+     * Creates a route arriving arrivalDayOffset days after it departs, e.g. 1 for an
+     * arrival listed as "08:08 (+1d)".
+     *
+     * @throws IllegalArgumentException if the offset is negative or the arrival is not after the departure
+     */
+    public Route(String routeId, Station departureStation, Station arrivalStation,
+                 LocalTime departureTime, LocalTime arrivalTime, int arrivalDayOffset, TrainType trainType,
+                 Money priceFirstClass, Money priceSecondClass, DaySet dayPattern) {
         this.routeId = routeId;
         this.departureStation = departureStation;
         this.arrivalStation = arrivalStation;
@@ -31,17 +54,29 @@ public class Route {
         this.priceSecondClass = priceSecondClass;
         this.dayPattern = dayPattern;
 
-        this.tripDurationMinutes = computeDurationMinutes(departureTime, arrivalTime);
+        this.departureMinuteOfDay = minuteOfDay(departureTime);
+        this.arrivalMinuteOfDay = minuteOfDay(arrivalTime);
+        setDayOffset(arrivalDayOffset);
     }
 
-    private static int computeDurationMinutes (LocalTime dep, LocalTime arr) {
+    private static int inferDayOffset(LocalTime dep, LocalTime arr) {
+        return minuteOfDay(arr) > minuteOfDay(dep) ? 0 : 1;
+    }
+
+    private static int minuteOfDay(LocalTime time) {
+        return time.getHour() * 60 + time.getMinute();
+    }
 
-        Duration d = Duration.between (dep, arr);
-        if (d.isNegative() || d.isZero()) {
-            d = d.plusDays(1);
+    private void setDayOffset(int dayOffset) {
+        if (dayOffset < 0) {
+            throw new IllegalArgumentException("Arrival day offset cannot be negative");
         }
-        return (int) d.toMinutes();
-    
+        int minutes = dayOffset * MINUTES_PER_DAY + arrivalMinuteOfDay - departureMinuteOfDay;
+        if (minutes <= 0) {
+            throw new IllegalArgumentException("Arrival must be after departure");
+        }
+        this.arrivalDayOffset = dayOffset;
+        this.tripDurationMinutes = minutes;
     }
 
     public int getDurationMinutes() {
@@ -115,27 +150,60 @@ public class Route {
         return departureTime;
     }
 
+    /**
+     * Changes the departure time. The arrival day offset is worked out again from the
+     * times, as by the constructor without an offset.
+     */
     public void setDepartureTime(LocalTime departureTime) {
         this.departureTime = departureTime;
-        this.tripDurationMinutes = computeDurationMinutes(this.departureTime, this.arrivalTime);
+        this.departureMinuteOfDay = minuteOfDay(departureTime);
+        setDayOffset(inferDayOffset(this.departureTime, this.arrivalTime));
     }
 
     public LocalTime getArrivalTime() {
        return arrivalTime;
     }
 
+    /**
+     * Changes the arrival time. The arrival day offset is worked out again from the
+     * times, as by the constructor without an offset.
+     */
     public void setArrivalTime(LocalTime arrivalTime) {
         this.arrivalTime = arrivalTime;
-        this.tripDurationMinutes = computeDurationMinutes(this.departureTime, this.arrivalTime);
+        this.arrivalMinuteOfDay = minuteOfDay(arrivalTime);
+        setDayOffset(inferDayOffset(this.departureTime, this.arrivalTime));
+    }
+
+    public int getDepartureMinuteOfDay() {
+        return departureMinuteOfDay;
+    }
+
+    public int getArrivalMinuteOfDay() {
+        return arrivalMinuteOfDay;
+    }
+
+    /**
+     * Returns the number of days between departure and arrival: 0 for a same-day arrival,
+     * 1 for an overnight route arriving the next morning.
+     *
+     * @return the arrival day offset
+     */
+    public int getArrivalDayOffset() {
+        return arrivalDayOffset;
+    }
+
+    public void setArrivalDayOffset(int arrivalDayOffset) {
+        setDayOffset(arrivalDayOffset);
     }
 
     // to hide routeID
     public String toPublicString() {
         return String.format(
-            "%s → %s | Dep %s  Arr %s | %s | 1st %s  2nd %s | Duration %s | Days %s",
+            "%s → %s | Dep %s  Arr %s%s | %s | 1st %s  2nd %s | Duration %s | Days %s",
             departureStation.getName(),
             arrivalStation.getName(),
             departureTime, arrivalTime,
+            arrivalDayOffset > 0 ? " (+" + arrivalDayOffset + "d)" : "",
             trainType,
             priceFirstClass, priceSecondClass,
             getFormattedDuration(),
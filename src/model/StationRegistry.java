@@ -0,0 +1,191 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * StationRegistry interns stations: every city gets exactly one Station object, a unique
+ * code and a dense int id (0, 1, 2, ... in the order the cities are first seen), so that
+ * per-station data can be kept in plain arrays indexed by id.
+ *
+ * Station codes are the first three letters of the city name, which is what the parser
+ * and DataLoader always generated. Different cities often share those letters (Berlin,
+ * Bern and Bergen are all "BER"), and since Station.equals compares codes, such cities
+ * used to be treated as one station. The registry gives the first city the plain code and
+ * later ones a different code: the first two letters followed by a later letter of the
+ * name ("BRU" for Brussels, then "BRG" for Bruges), or by a digit when every such code is
+ * taken. Each collision is recorded and available from getCodeCollisions(); nothing is
+ * printed, since a collision is expected and not an error.
+ *
+ * Which city gets the plain code depends on the order the cities are first seen, i.e. on
+ * the row order of the CSV file. DataLoader stores these codes in the UNIQUE code column
+ * of the STATION table, so reordering the CSV rows can change the codes of colliding
+ * cities between an existing database and a new load.
+ *
+ * One registry should be shared by everything that creates stations from the same data
+ * (CSVRouteParser, DataLoader), so that they agree on codes and ids. All methods are
+ * thread-safe.
+ */
+public class StationRegistry {
+    private static final String DEFAULT_COUNTRY = "Unknown";
+    private static final String NO_LETTERS_CODE = "XXX";
+
+    private final List<Station> stations = new ArrayList<>();
+    private final Map<String, Integer> idsByCity = new HashMap<>();
+    private final Map<String, Integer> idsByCode = new HashMap<>();
+    private final Map<String, List<String>> collisions = new LinkedHashMap<>();
+
+    /**
+     * Returns the station of a city, creating it on first use.
+     *
+     * @param city the city name, which is also used as station name
+     * @return the one Station for this city
+     */
+    public synchronized Station intern(String city) {
+        if (city == null || city.isBlank()) {
+            throw new IllegalArgumentException("City cannot be empty");
+        }
+        Integer id = idsByCity.get(city);
+        if (id != null) {
+            return stations.get(id);
+        }
+
+        String code = uniqueCode(city);
+        Station station = new Station(city, city, DEFAULT_COUNTRY, code);
+        int newId = stations.size();
+        stations.add(station);
+        idsByCity.put(city, newId);
+        idsByCode.put(code, newId);
+        return station;
+    }
+
+    /**
+     * Returns the three-letter code of a city name, ignoring collisions.
+     *
+     * @param city the city name
+     * @return the first three letters A-Z of the upper-cased name, or "XXX" if there are none
+     */
+    public static String baseCode(String city) {
+        String letters = lettersOf(city);
+        if (letters.isEmpty()) return NO_LETTERS_CODE;
+        return letters.substring(0, Math.min(3, letters.length()));
+    }
+
+    private static String lettersOf(String city) {
+        String upper = city.toUpperCase();
+        StringBuilder letters = new StringBuilder(upper.length());
+        for (int i = 0; i < upper.length(); i++) {
+            char c = upper.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                letters.append(c);
+            }
+        }
+        return letters.toString();
+    }
+
+    private String uniqueCode(String city) {
+        String base = baseCode(city);
+        if (!idsByCode.containsKey(base)) {
+            return base;
+        }
+
+        String code = null;
+        String letters = lettersOf(city);
+        String prefix = base.substring(0, Math.min(2, base.length()));
+        for (int i = 3; i < letters.length() && code == null; i++) {
+            String candidate = prefix + letters.charAt(i);
+            if (!idsByCode.containsKey(candidate)) {
+                code = candidate;
+            }
+        }
+        for (int n = 2; code == null; n++) {
+            String candidate = (n < 10 ? prefix : base) + n;
+            if (!idsByCode.containsKey(candidate)) {
+                code = candidate;
+            }
+        }
+
+        collisions.computeIfAbsent(base,
+            b -> new ArrayList<>(List.of(stations.get(idsByCode.get(b)).getCity()))).add(city);
+        return code;
+    }
+
+    /**
+     * Returns the dense id of a station, or -1 if the registry did not create it.
+     *
+     * @param station the station
+     * @return the station id, or -1
+     */
+    public synchronized int idOf(Station station) {
+        Integer id = idsByCode.get(station.getCode());
+        return id != null && stations.get(id) == station ? id : -1;
+    }
+
+    /**
+     * Returns the station with the given id.
+     *
+     * @param id a station id between 0 and size() - 1
+     * @return the station
+     */
+    public synchronized Station get(int id) {
+        return stations.get(id);
+    }
+
+    /**
+     * Looks up a station by its code.
+     *
+     * @param code the station code
+     * @return the station, or null if no station has this code
+     */
+    public synchronized Station findByCode(String code) {
+        Integer id = idsByCode.get(code);
+        return id != null ? stations.get(id) : null;
+    }
+
+    /**
+     * Looks up the station of a city without creating it.
+     *
+     * @param city the city name
+     * @return the station, or null if the city is not registered
+     */
+    public synchronized Station findByCity(String city) {
+        Integer id = idsByCity.get(city);
+        return id != null ? stations.get(id) : null;
+    }
+
+    /**
+     * Returns the number of stations, which is also one more than the largest id.
+     *
+     * @return the number of stations
+     */
+    public synchronized int size() {
+        return stations.size();
+    }
+
+    /**
+     * Returns all stations in id order.
+     *
+     * @return a copy of the registered stations
+     */
+    public synchronized List<Station> getAllStations() {
+        return new ArrayList<>(stations);
+    }
+
+    /**
+     * Returns the cities whose names start with the same three letters, by that code,
+     * in the order they were registered. Only the first city of each list got the code.
+     *
+     * @return an unmodifiable copy of the collisions found so far
+     */
+    public synchronized Map<String, List<String>> getCodeCollisions() {
+        Map<String, List<String>> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> entry : collisions.entrySet()) {
+            copy.put(entry.getKey(), List.copyOf(entry.getValue()));
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+}
@@ -0,0 +1,132 @@
+package model;
+
+import java.time.LocalTime;
+
+/**
+ * TransferWindows is the LayoverPolicy worked out for every arrival minute of the day:
+ * for each minute from 0 (midnight) to 1439 it holds the shortest and longest acceptable
+ * layover. After arriving at minute m, the routes that can be boarded are exactly the ones
+ * leaving between earliestDeparture(m) and latestDeparture(m), so a search can range-query
+ * the sorted departures of a station instead of testing every outgoing route.
+ *
+ * Instances are immutable. LayoverPolicy builds a new table whenever its settings change;
+ * a search should read LayoverPolicy.getTransferWindows() once and use that table throughout.
+ */
+public final class TransferWindows {
+    private final int minDaytimeLayoverMinutes;
+    private final int maxDaytimeLayoverMinutes;
+    private final int maxAfterHoursLayoverMinutes;
+    private final LocalTime daytimeStart;
+    private final LocalTime daytimeEnd;
+
+    private final boolean[] afterHours = new boolean[Route.MINUTES_PER_DAY];
+    private final int[] minLayoverMinutes = new int[Route.MINUTES_PER_DAY];
+    private final int[] maxLayoverMinutes = new int[Route.MINUTES_PER_DAY];
+    private final int longestLayoverMinutes;
+
+    TransferWindows(int minDaytimeLayoverMinutes, int maxDaytimeLayoverMinutes,
+                    int maxAfterHoursLayoverMinutes, LocalTime daytimeStart, LocalTime daytimeEnd) {
+        this.minDaytimeLayoverMinutes = minDaytimeLayoverMinutes;
+        this.maxDaytimeLayoverMinutes = maxDaytimeLayoverMinutes;
+        this.maxAfterHoursLayoverMinutes = maxAfterHoursLayoverMinutes;
+        this.daytimeStart = daytimeStart;
+        this.daytimeEnd = daytimeEnd;
+
+        for (int minute = 0; minute < Route.MINUTES_PER_DAY; minute++) {
+            // Same comparison as LayoverPolicy.isAfterHours(LocalTime), done once per minute
+            LocalTime time = LocalTime.of(minute / 60, minute % 60);
+            afterHours[minute] = time.isBefore(daytimeStart) || time.isAfter(daytimeEnd);
+            minLayoverMinutes[minute] = afterHours[minute] ? 0 : minDaytimeLayoverMinutes;
+            maxLayoverMinutes[minute] = afterHours[minute] ? maxAfterHoursLayoverMinutes : maxDaytimeLayoverMinutes;
+        }
+        this.longestLayoverMinutes = Math.max(maxDaytimeLayoverMinutes, maxAfterHoursLayoverMinutes);
+    }
+
+    /**
+     * Returns the shortest acceptable layover after arriving at the given minute.
+     *
+     * @param arrivalMinuteOfDay the arrival time in minutes from midnight, 0 to 1439
+     * @return the minimum layover in minutes
+     */
+    public int minLayoverMinutes(int arrivalMinuteOfDay) {
+        return minLayoverMinutes[arrivalMinuteOfDay];
+    }
+
+    /**
+     * Returns the longest acceptable layover after arriving at the given minute.
+     *
+     * @param arrivalMinuteOfDay the arrival time in minutes from midnight, 0 to 1439
+     * @return the maximum layover in minutes
+     */
+    public int maxLayoverMinutes(int arrivalMinuteOfDay) {
+        return maxLayoverMinutes[arrivalMinuteOfDay];
+    }
+
+    /**
+     * Returns the earliest departure that can be boarded after arriving at the given minute.
+     * Minutes may count from the midnight of any day, e.g. 1500 is 01:00 on the next day,
+     * and the result counts from the same midnight.
+     *
+     * @param arrivalMinute the arrival time in minutes
+     * @return the earliest acceptable departure in minutes
+     */
+    public int earliestDeparture(int arrivalMinute) {
+        return arrivalMinute + minLayoverMinutes[Math.floorMod(arrivalMinute, Route.MINUTES_PER_DAY)];
+    }
+
+    /**
+     * Returns the latest departure that can be boarded after arriving at the given minute,
+     * counted like earliestDeparture.
+     *
+     * @param arrivalMinute the arrival time in minutes
+     * @return the latest acceptable departure in minutes
+     */
+    public int latestDeparture(int arrivalMinute) {
+        return arrivalMinute + maxLayoverMinutes[Math.floorMod(arrivalMinute, Route.MINUTES_PER_DAY)];
+    }
+
+    /**
+     * Checks a layover the way LayoverPolicy.isAcceptableLayover does.
+     *
+     * @param layoverMinutes the duration of the layover in minutes
+     * @param arrivalMinuteOfDay the arrival time of the first route, 0 to 1439
+     * @return true if the layover is acceptable, false otherwise
+     */
+    public boolean isAcceptable(int layoverMinutes, int arrivalMinuteOfDay) {
+        return layoverMinutes >= minLayoverMinutes[arrivalMinuteOfDay] &&
+               layoverMinutes <= maxLayoverMinutes[arrivalMinuteOfDay];
+    }
+
+    public boolean isAfterHours(int minuteOfDay) {
+        return afterHours[minuteOfDay];
+    }
+
+    /**
+     * Returns the longest layover accepted at any time of day.
+     *
+     * @return the longest acceptable layover in minutes
+     */
+    public int getLongestLayoverMinutes() {
+        return longestLayoverMinutes;
+    }
+
+    public int getMinDaytimeLayoverMinutes() {
+        return minDaytimeLayoverMinutes;
+    }
+
+    public int getMaxDaytimeLayoverMinutes() {
+        return maxDaytimeLayoverMinutes;
+    }
+
+    public int getMaxAfterHoursLayoverMinutes() {
+        return maxAfterHoursLayoverMinutes;
+    }
+
+    public LocalTime getDaytimeStart() {
+        return daytimeStart;
+    }
+
+    public LocalTime getDaytimeEnd() {
+        return daytimeEnd;
+    }
+}
@@ -3,19 +3,73 @@ package parser;
 import model.*;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class CSVRouteParser {
 
     private static final DateTimeFormatter TIME_FORMATTER =
             DateTimeFormatter.ofPattern("HH:mm");
 
+    // Chunk sizes for parseRoutesParallel; a chunk is mapped and read as one buffer
+    private static final long MIN_CHUNK_BYTES = 1 << 20;
+    private static final long MAX_CHUNK_BYTES = 1 << 30;
+
+    // Memo tables stop growing at this many entries; later tokens are parsed every time
+    private static final int MEMO_LIMIT = 4096;
+
+    // Returned by parseCents for prices it leaves to BigDecimal
+    private static final long NOT_SIMPLE = Long.MIN_VALUE;
+
+    private final StationRegistry stationRegistry;
+
+    // Timetables repeat the same few tokens on most rows, so their parsed values are memoized.
+    // Day patterns are memoized as masks because DaySet is mutable; train types only when
+    // they resolve without a warning, so every row with an unknown type is still reported.
+    private final ConcurrentMap<String, Integer> dayMasksByToken = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, TrainType> trainTypesByToken = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Station> stationsByCity = new ConcurrentHashMap<>();
+
+    public CSVRouteParser() {
+        this(new StationRegistry());
+    }
+
+    // Share a registry to get the same Station objects and codes across parsers and loaders
+    public CSVRouteParser(StationRegistry stationRegistry) {
+        if (stationRegistry == null) {
+            throw new IllegalArgumentException("Station registry cannot be null");
+        }
+        this.stationRegistry = stationRegistry;
+    }
+
+    public StationRegistry getStationRegistry() {
+        return stationRegistry;
+    }
+
     // Parse time strings like "08:29" or "08:29 (+1d)" (next-day arrival)
     private LocalTime parseTime(String raw) {
         String cleaned = raw.trim();
@@ -24,56 +78,390 @@ public class CSVRouteParser {
             // Drop everything after the first space, e.g. "08:29 (+1d)" -> "08:29"
             cleaned = cleaned.substring(0, spaceIdx);
         }
+        // Read the usual "HH:mm" directly; anything else gets the formatter and its errors
+        if (cleaned.length() == 5 && cleaned.charAt(2) == ':') {
+            int hour = twoDigits(cleaned, 0);
+            int minute = twoDigits(cleaned, 3);
+            if (hour >= 0 && hour < 24 && minute >= 0 && minute < 60) {
+                return LocalTime.of(hour, minute);
+            }
+        }
         return LocalTime.parse(cleaned, TIME_FORMATTER);
     }
 
+    // The two-digit number at index, or -1 if those are not two digits
+    private static int twoDigits(String s, int index) {
+        char tens = s.charAt(index);
+        char units = s.charAt(index + 1);
+        if (tens < '0' || tens > '9' || units < '0' || units > '9') {
+            return -1;
+        }
+        return (tens - '0') * 10 + (units - '0');
+    }
+
+    // Parse the day offset of an arrival like "08:29 (+1d)". Without a readable one, an
+    // arrival that is not after the departure is taken to be on the next day, as before.
+    private int parseDayOffset(String raw, LocalTime departureTime, LocalTime arrivalTime) {
+        int inferred = arrivalTime.isAfter(departureTime) ? 0 : 1;
+        int start = raw.indexOf("(+");
+        int end = start < 0 ? -1 : raw.indexOf("d)", start);
+        if (end < 0) {
+            return inferred;
+        }
+        try {
+            int offset = Integer.parseInt(raw.substring(start + 2, end).trim());
+            return offset >= 0 ? offset : inferred;
+        } catch (NumberFormatException e) {
+            // A malformed suffix such as "(+xd)" is ignored, like any other text after the time
+            return inferred;
+        }
+    }
+
     // Parse prices that may contain non-numeric characters, e.g. "T 79.90", "EUR 45.00"
     private Money parsePrice(String raw, String currency, int lineNo, String fieldName) {
-        String cleaned = raw == null ? "" : raw.trim();
+        String trimmed = raw == null ? "" : raw.trim();
 
-        // Remove everything that is not a digit, decimal separator, minus sign, or comma
-        cleaned = cleaned.replaceAll("[^0-9,.-]", "");
+        long cents = parseCents(trimmed);
+        if (cents != NOT_SIMPLE) {
+            return Money.ofMinorUnits(cents, currency);
+        }
 
-        // Convert comma decimal separators to dot
-        cleaned = cleaned.replace(',', '.');
+        // Keep only digits, decimal separators and minus signs, with commas read as dots
+        StringBuilder cleaned = new StringBuilder(trimmed.length());
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if ((c >= '0' && c <= '9') || c == '.' || c == '-') {
+                cleaned.append(c);
+            } else if (c == ',') {
+                cleaned.append('.');
+            }
+        }
 
-        if (cleaned.isEmpty()) {
+        if (cleaned.length() == 0) {
             throw new IllegalArgumentException(
                     "Invalid " + fieldName + " price '" + raw + "' on line " + lineNo);
         }
 
-        return new Money(new BigDecimal(cleaned), currency);
+        return new Money(new BigDecimal(cleaned.toString()), currency);
+    }
+
+    // Reads prices like "79", "79.9" or "EUR 79,90" straight into cents, skipping the same
+    // characters parsePrice drops. Returns NOT_SIMPLE for anything else (several separators,
+    // more than two decimals, very long numbers), which parsePrice leaves to BigDecimal.
+    private static long parseCents(String s) {
+        boolean negative = false;
+        boolean seenSeparator = false;
+        boolean seenAny = false;
+        int integerDigits = 0;
+        int fractionDigits = 0;
+        long value = 0;
+
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (seenSeparator) {
+                    if (++fractionDigits > 2) return NOT_SIMPLE;
+                } else if (++integerDigits > 15) {
+                    return NOT_SIMPLE;
+                }
+                value = value * 10 + (c - '0');
+            } else if (c == '.' || c == ',') {
+                if (seenSeparator) return NOT_SIMPLE;
+                seenSeparator = true;
+            } else if (c == '-') {
+                if (seenAny) return NOT_SIMPLE;
+                negative = true;
+            } else {
+                continue;
+            }
+            seenAny = true;
+        }
+
+        if (integerDigits == 0) return NOT_SIMPLE;
+        for (int i = fractionDigits; i < 2; i++) {
+            value *= 10;
+        }
+        return negative ? -value : value;
     }
 
     public List<Route> parseRoutes(String csvFilePath) throws IOException {
-        List<Route> routes = new ArrayList<>();
+        try (Stream<Route> routes = streamRoutes(csvFilePath)) {
+            return routes.collect(Collectors.toCollection(ArrayList::new));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
 
-        try (BufferedReader reader = Files.newBufferedReader(Paths.get(csvFilePath))) {
-            String header = reader.readLine(); // skip header
-            if (header == null) return routes;
+    /**
+     * Returns the routes of the file as they are parsed, in file order, so that a caller
+     * can store them one by one without the parser holding the whole list. Lines are read
+     * only as the stream is consumed, and closing the stream closes the file, so use it in
+     * a try-with-resources block. Read errors are thrown as UncheckedIOException.
+     *
+     * @param csvFilePath path to the CSV file
+     * @return an ordered, sequential stream of routes
+     * @throws IOException if the file cannot be opened
+     */
+    public Stream<Route> streamRoutes(String csvFilePath) throws IOException {
+        BufferedReader reader = Files.newBufferedReader(Paths.get(csvFilePath));
+        char delimiter;
+        try {
+            delimiter = detectDelimiter(reader.readLine()); // skip header
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+        return StreamSupport.stream(new RouteSpliterator(reader, delimiter), false)
+                .onClose(() -> {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
 
-            String line;
-            int lineNo = 1;
+    /**
+     * Parses the file like parseRoutes, using one worker thread per available processor.
+     *
+     * @param csvFilePath path to the CSV file
+     * @return the routes, in file order
+     * @throws IOException if the file cannot be read
+     */
+    public List<Route> parseRoutesParallel(String csvFilePath) throws IOException {
+        return parseRoutesParallel(csvFilePath, Runtime.getRuntime().availableProcessors());
+    }
 
-            while ((line = reader.readLine()) != null) {
-                lineNo++;
-                if (line.isBlank()) continue;
+    /**
+     * Parses the file like parseRoutes, on several threads. The file is memory-mapped and
+     * split into chunks that start at a line boundary; each chunk is parsed on a worker
+     * thread. The results are merged in chunk order, which is also when stations are
+     * interned and errors are reported, so the routes, station codes and error messages
+     * (with their line numbers) are the same as parseRoutes gives.
+     *
+     * @param csvFilePath path to the CSV file
+     * @param threads the number of worker threads
+     * @return the routes, in file order
+     * @throws IOException if the file cannot be read
+     */
+    public List<Route> parseRoutesParallel(String csvFilePath, int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+        List<Route> routes = new ArrayList<>();
 
-                Route route = parseRouteLine(line, lineNo);
-                if (route != null) {
-                    routes.add(route);
+        try (FileChannel channel = FileChannel.open(Paths.get(csvFilePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long dataStart = nextLineStart(channel, 0, size); // skip header
+            if (dataStart >= size) return routes;
+            char delimiter = detectDelimiter(readHeader(channel, dataStart));
+
+            List<long[]> chunks = splitIntoChunks(channel, dataStart, size, threads);
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, chunks.size()));
+            try {
+                // Line numbers of a chunk depend on the lines before it, so count those first
+                List<Future<Integer>> lineCounts = new ArrayList<>();
+                for (long[] chunk : chunks) {
+                    lineCounts.add(executor.submit(() -> countLines(channel, chunk[0], chunk[1])));
+                }
+                List<Future<List<RouteLine>>> parsedChunks = new ArrayList<>();
+                int firstLineNo = 2;
+                for (int i = 0; i < chunks.size(); i++) {
+                    long[] chunk = chunks.get(i);
+                    int lineNo = firstLineNo;
+                    parsedChunks.add(executor.submit(() -> parseChunk(channel, chunk[0], chunk[1], lineNo, delimiter)));
+                    firstLineNo += await(lineCounts.get(i));
                 }
+                for (Future<List<RouteLine>> parsedChunk : parsedChunks) {
+                    for (RouteLine parsed : await(parsedChunk)) {
+                        addRoute(routes, parsed);
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
             }
         }
 
         return routes;
     }
 
-    private Route parseRouteLine(String line, int lineNo) {
+    // Splits [start, end) into pieces of about a few per thread, each ending after a newline
+    private static List<long[]> splitIntoChunks(FileChannel channel, long start, long end, int threads)
+            throws IOException {
+        long target = Math.max(MIN_CHUNK_BYTES, (end - start) / (threads * 4L) + 1);
+        target = Math.min(target, MAX_CHUNK_BYTES);
+        List<long[]> chunks = new ArrayList<>();
+        while (start < end) {
+            long chunkEnd = nextLineStart(channel, Math.min(end, start + target) - 1, end);
+            if (chunkEnd - start > Integer.MAX_VALUE) {
+                throw new IOException("Line longer than " + Integer.MAX_VALUE + " bytes after position " + start);
+            }
+            chunks.add(new long[] {start, chunkEnd});
+            start = chunkEnd;
+        }
+        return chunks;
+    }
+
+    // The first line of the file, which ends before dataStart
+    private static String readHeader(FileChannel channel, long dataStart) throws IOException {
+        if (dataStart > Integer.MAX_VALUE) {
+            throw new IOException("Header line longer than " + Integer.MAX_VALUE + " bytes");
+        }
+        ByteBuffer header = ByteBuffer.allocate((int) dataStart);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) <= 0) break;
+        }
+        return new String(header.array(), 0, header.position(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Detects the field delimiter from the header row: a semicolon if the header has more
+     * semicolons than commas outside quotes, a comma otherwise (also for a missing header).
+     */
+    private static char detectDelimiter(String headerLine) {
+        if (headerLine == null) {
+            return ',';
+        }
+        int commaCount = 0;
+        int semicolonCount = 0;
+        boolean inQuotes = false;
+        for (int i = 0; i < headerLine.length(); i++) {
+            char c = headerLine.charAt(i);
+            if (c == '"') {
+                inQuotes = !inQuotes;
+            } else if (!inQuotes) {
+                if (c == ',') {
+                    commaCount++;
+                } else if (c == ';') {
+                    semicolonCount++;
+                }
+            }
+        }
+        return semicolonCount > commaCount ? ';' : ',';
+    }
+
+    // Position just after the first newline at or after from, or end if there is none
+    private static long nextLineStart(FileChannel channel, long from, long end) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(8192);
+        long position = from;
+        while (position < end) {
+            block.clear();
+            int read = channel.read(block, position);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                if (block.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return end;
+    }
+
+    private static int countLines(FileChannel channel, long start, long end) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        int count = 0;
+        for (int i = 0, n = buffer.limit(); i < n; i++) {
+            if (buffer.get(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private List<RouteLine> parseChunk(FileChannel channel, long start, long end, int firstLineNo,
+                                       char delimiter) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        List<RouteLine> lines = new ArrayList<>();
+        byte[] bytes = new byte[256];
+        int lineNo = firstLineNo;
+        int lineStart = 0;
+        int n = buffer.limit();
+
+        for (int i = 0; i <= n; i++) {
+            if (i < n && buffer.get(i) != '\n') continue;
+            if (i == n && lineStart == n) break; // no unterminated last line
+
+            int lineEnd = i;
+            if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                lineEnd--; // BufferedReader drops the \r of \r\n too
+            }
+            int length = lineEnd - lineStart;
+            if (bytes.length < length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            buffer.get(lineStart, bytes, 0, length);
+            String line = new String(bytes, 0, length, StandardCharsets.UTF_8);
+
+            if (!line.isBlank()) {
+                RouteLine parsed = parseRouteLine(line, lineNo, delimiter);
+                if (parsed != null) {
+                    lines.add(parsed);
+                }
+            }
+            lineNo++;
+            lineStart = i + 1;
+        }
+        return lines;
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
         try {
-            // Naive CSV split (we manually fix the days column when it has commas).
-            String[] rawFields = line.split(",", -1);
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while parsing routes");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Parsing failed", cause);
+        }
+    }
+
+    // Interns the stations of a parsed line and builds its Route. Runs on one thread in
+    // line order, so station ids and codes do not depend on how the file was split.
+    private void addRoute(List<Route> routes, RouteLine parsed) {
+        if (parsed == null) return;
+        parsed.printMessages();
+        try {
+            Station departureStation = parsed.departureCity == null ? null : makeStation(parsed.departureCity);
+            Station arrivalStation   = parsed.arrivalCity == null ? null : makeStation(parsed.arrivalCity);
+            if (!parsed.valid) return;
 
+            routes.add(new Route(
+                    parsed.routeId,
+                    departureStation,
+                    arrivalStation,
+                    parsed.departureTime,
+                    parsed.arrivalTime,
+                    parsed.arrivalDayOffset,
+                    parsed.trainType,
+                    parsed.priceFirst,
+                    parsed.priceSecond,
+                    parsed.dayPattern
+            ));
+        } catch (Exception e) {
+            System.err.println("Error on line " + parsed.lineNo + ": " + e.getMessage());
+        }
+    }
+
+    // Parses everything but the stations, so that it can run on any thread. Fields are
+    // separated by the delimiter detectDelimiter found in the header.
+    private RouteLine parseRouteLine(String line, int lineNo, char delimiter) {
+        RouteLine parsed = new RouteLine(lineNo);
+        try {
+            // Scan for the delimiters instead of splitting the line. The days column may itself
+            // contain the delimiter (e.g. "Mon,Wed,Fri" in a comma-separated file), so it is
+            // whatever lies between the sixth delimiter and the second-to-last one.
+            //
             // Expected minimal layout:
             // 0: routeId
             // 1: depCity
@@ -84,80 +472,133 @@ public class CSVRouteParser {
             // ... one or more fields for days ...
             // last-2: first class price
             // last-1: second class price
-            if (rawFields.length < 8) {
-                System.err.println("Line " + lineNo + " skipped: expected at least 8 columns.");
-                return null;
+            int[] separators = new int[6];
+            int from = 0;
+            for (int i = 0; i < separators.length && from >= 0; i++) {
+                separators[i] = line.indexOf(delimiter, from);
+                from = separators[i] < 0 ? -1 : separators[i] + 1;
+            }
+            int lastSeparator = line.lastIndexOf(delimiter);
+            int secondLastSeparator = lastSeparator > 0 ? line.lastIndexOf(delimiter, lastSeparator - 1) : -1;
+            if (from < 0 || secondLastSeparator < separators[5]) {
+                parsed.addMessage("Line " + lineNo + " skipped: expected at least 8 columns.");
+                return parsed;
             }
 
-            String routeId      = rawFields[0].trim();
-            String depCity      = rawFields[1].trim();
-            String arrCity      = rawFields[2].trim();
-            String depTimeStr   = rawFields[3].trim();
-            String arrTimeStr   = rawFields[4].trim();
-            String trainTypeStr = rawFields[5].trim();
+            String routeId      = field(line, 0, separators[0]);
+            String depCity      = field(line, separators[0] + 1, separators[1]);
+            String arrCity      = field(line, separators[1] + 1, separators[2]);
+            String depTimeStr   = field(line, separators[2] + 1, separators[3]);
+            String arrTimeStr   = field(line, separators[3] + 1, separators[4]);
+            String trainTypeStr = field(line, separators[4] + 1, separators[5]);
 
             // Prices are always the last two fields in the row.
-            int firstPriceIndex  = rawFields.length - 2;
-            int secondPriceIndex = rawFields.length - 1;
-
-            String firstPriceStr  = rawFields[firstPriceIndex].trim();
-            String secondPriceStr = rawFields[secondPriceIndex].trim();
-
-            // Everything between index 6 (inclusive) and firstPriceIndex (exclusive)
-            // belongs to the "days" column (may itself contain commas, e.g. "Mon,Wed,Fri").
-            StringBuilder daysBuilder = new StringBuilder();
-            for (int i = 6; i < firstPriceIndex; i++) {
-                String part = rawFields[i].trim();
-                if (part.isEmpty()) continue;
-                if (daysBuilder.length() > 0) {
-                    daysBuilder.append(",");
-                }
-                daysBuilder.append(part);
-            }
-            String daysStr = daysBuilder.toString();
+            String firstPriceStr  = field(line, secondLastSeparator + 1, lastSeparator);
+            String secondPriceStr = field(line, lastSeparator + 1, line.length());
 
-            // Build Station objects
-            Station departureStation = makeStation(depCity);
-            Station arrivalStation   = makeStation(arrCity);
+            // Days column, as written (empty when the row has exactly 8 fields)
+            String daysToken = separators[5] < secondLastSeparator
+                    ? line.substring(separators[5] + 1, secondLastSeparator) : "";
+
+            // Station cities (the stations themselves are made in addRoute)
+            parsed.departureCity = checkCity(depCity);
+            parsed.arrivalCity   = checkCity(arrCity);
 
             // Times (handle values like "08:29 (+1d)")
-            LocalTime departureTime = parseTime(depTimeStr);
-            LocalTime arrivalTime   = parseTime(arrTimeStr);
+            parsed.departureTime    = parseTime(depTimeStr);
+            parsed.arrivalTime      = parseTime(arrTimeStr);
+            parsed.arrivalDayOffset = parseDayOffset(arrTimeStr, parsed.departureTime, parsed.arrivalTime);
 
             // Train type (with robust parsing / fallback)
-            TrainType trainType = parseTrainType(trainTypeStr, lineNo);
+            parsed.trainType = parseTrainType(trainTypeStr, parsed);
 
             // Prices (clean up possible prefixes or currency symbols)
-            Money priceFirst  = parsePrice(firstPriceStr, "EUR", lineNo, "first-class");
-            Money priceSecond = parsePrice(secondPriceStr, "EUR", lineNo, "second-class");
+            parsed.priceFirst  = parsePrice(firstPriceStr, "EUR", lineNo, "first-class");
+            parsed.priceSecond = parsePrice(secondPriceStr, "EUR", lineNo, "second-class");
 
             // Days pattern
-            DaySet dayPattern = parseDayPattern(daysStr);
+            parsed.dayPattern = new DaySet(dayMask(daysToken));
 
-            // Build Route
-            return new Route(
-                    routeId,
-                    departureStation,
-                    arrivalStation,
-                    departureTime,
-                    arrivalTime,
-                    trainType,
-                    priceFirst,
-                    priceSecond,
-                    dayPattern
-            );
+            parsed.routeId = routeId;
+            parsed.valid = true;
 
         } catch (Exception e) {
-            System.err.println("Error on line " + lineNo + ": " + e.getMessage());
-            return null;
+            parsed.addMessage("Error on line " + lineNo + ": " + e.getMessage());
         }
+        return parsed;
+    }
+
+    // The trimmed text between start and end, with a single substring
+    private static String field(String line, int start, int end) {
+        while (start < end && line.charAt(start) <= ' ') start++;
+        while (end > start && line.charAt(end - 1) <= ' ') end--;
+        return line.substring(start, end);
+    }
+
+    // Day mask of a raw days column, e.g. "Mon-Fri" or "\"Mon, Wed,Fri\""
+    private int dayMask(String daysToken) {
+        Integer mask = dayMasksByToken.get(daysToken);
+        if (mask != null) {
+            return mask;
+        }
+
+        // Every comma-separated part is trimmed and empty parts are dropped
+        StringBuilder daysBuilder = new StringBuilder();
+        int partStart = 0;
+        while (partStart <= daysToken.length()) {
+            int partEnd = daysToken.indexOf(',', partStart);
+            if (partEnd < 0) partEnd = daysToken.length();
+            String part = field(daysToken, partStart, partEnd);
+            if (!part.isEmpty()) {
+                if (daysBuilder.length() > 0) {
+                    daysBuilder.append(",");
+                }
+                daysBuilder.append(part);
+            }
+            partStart = partEnd + 1;
+        }
+
+        int parsedMask = parseDayPattern(daysBuilder.toString()).getDayPattern();
+        if (dayMasksByToken.size() < MEMO_LIMIT) {
+            dayMasksByToken.putIfAbsent(daysToken, parsedMask);
+        }
+        return parsedMask;
+    }
+
+    // Same check as StationRegistry.intern, made before any station of the line is created
+    private static String checkCity(String city) {
+        if (city.isBlank()) {
+            throw new IllegalArgumentException("City cannot be empty");
+        }
+        return city;
     }
 
     /**
      * Parse train type in a robust way, handling unknown or slightly different labels.
      */
-    private TrainType parseTrainType(String raw, int lineNo) {
-        String normalized = raw == null ? "" : raw.trim().toUpperCase().replace(" ", "_");
+    private TrainType parseTrainType(String raw, RouteLine parsed) {
+        TrainType known = raw == null ? null : trainTypesByToken.get(raw);
+        if (known != null) {
+            return known;
+        }
+
+        TrainType trainType = resolveTrainType(raw);
+        if (trainType != null) {
+            if (trainTypesByToken.size() < MEMO_LIMIT) {
+                trainTypesByToken.putIfAbsent(raw, trainType);
+            }
+            return trainType;
+        }
+
+        // As a last resort, log and fall back to the first defined enum constant
+        parsed.addMessage("Unknown train type '" + raw + "' on line " + parsed.lineNo
+                + " — defaulting to " + TrainType.values()[0]);
+        return TrainType.values()[0];
+    }
+
+    // The train type a label names, or null if it names none
+    private static TrainType resolveTrainType(String raw) {
+        String normalized = raw == null ? "" : raw.trim().toUpperCase().replace(' ', '_');
 
         // Try direct match first
         try {
@@ -179,25 +620,18 @@ public class CSVRouteParser {
             }
         }
 
-        // As a last resort, log and fall back to the first defined enum constant
-        System.err.println("Unknown train type '" + raw + "' on line " + lineNo
-                + " — defaulting to " + TrainType.values()[0]);
-        return TrainType.values()[0];
+        return null;
     }
 
+    // One Station per city, with a code that no other city uses. Cities repeat on most
+    // rows, so the registry (and its lock) is only asked about each city once.
     private Station makeStation(String cityName) {
-        String name = cityName;
-        String city = cityName;
-        String country = "Unknown";
-        String code = generateStationCode(cityName);
-        return new Station(name, city, country, code);
-    }
-
-    // Generate 3-letter station code
-    private String generateStationCode(String stationName) {
-        String letters = stationName.toUpperCase().replaceAll("[^A-Z]", "");
-        if (letters.isEmpty()) return "XXX";
-        return letters.substring(0, Math.min(3, letters.length()));
+        Station station = stationsByCity.get(cityName);
+        if (station == null) {
+            station = stationRegistry.intern(cityName);
+            stationsByCity.putIfAbsent(cityName, station);
+        }
+        return station;
     }
 
     private DaySet parseDayPattern(String token) {
@@ -240,12 +674,12 @@ public class CSVRouteParser {
         }
 
         // Binary day mask "1111100"
-        if (token.matches("[01]{7}")) {
+        if (isBinaryMask(token)) {
             return new DaySet(Integer.parseInt(token, 2));
         }
 
         // Remove all whitespace
-        token = token.replaceAll("\\s+", "");
+        token = removeWhitespace(token);
 
         // Range: "Fri-Sun" or "Mon-Fri"
         if (token.contains("-")) {
@@ -271,6 +705,31 @@ public class CSVRouteParser {
         return new DaySet(mask);
     }
 
+    private static boolean isBinaryMask(String token) {
+        if (token.length() != 7) return false;
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c != '0' && c != '1') return false;
+        }
+        return true;
+    }
+
+    // Same characters as the regex \s
+    private static String removeWhitespace(String token) {
+        StringBuilder sb = null;
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r') {
+                if (sb == null) {
+                    sb = new StringBuilder(token.length()).append(token, 0, i);
+                }
+            } else if (sb != null) {
+                sb.append(c);
+            }
+        }
+        return sb == null ? token : sb.toString();
+    }
+
     // Monday=0 … Sunday=6, 3-letter abbreviations only
     private int dayIndex(String d) {
         if (d == null) {
@@ -308,4 +767,86 @@ public class CSVRouteParser {
                 throw new IllegalArgumentException("Invalid day: " + d);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Reads and parses lines on demand for streamRoutes. Lines that do not give a route
+     * are reported and skipped, as in parseRoutes. The number of routes is not known in
+     * advance, so the spliterator does not split and reports no size.
+     */
+    private final class RouteSpliterator extends Spliterators.AbstractSpliterator<Route> {
+        private final BufferedReader reader;
+        private final char delimiter;
+        private final List<Route> pending = new ArrayList<>(1);
+        private int lineNo = 1;
+
+        RouteSpliterator(BufferedReader reader, char delimiter) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.reader = reader;
+            this.delimiter = delimiter;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Route> action) {
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lineNo++;
+                    if (line.isBlank()) continue;
+
+                    addRoute(pending, parseRouteLine(line, lineNo, delimiter));
+                    if (!pending.isEmpty()) {
+                        action.accept(pending.remove(0));
+                        return true;
+                    }
+                }
+                return false;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public Spliterator<Route> trySplit() {
+            return null;
+        }
+    }
+
+    /**
+     * The values of one CSV line before its stations are interned, with the messages
+     * parsing it produced. A line that is not valid still names the cities that were
+     * read before the error, since parseRoutes always created those stations.
+     */
+    private static final class RouteLine {
+        private final int lineNo;
+        private String routeId;
+        private String departureCity;
+        private String arrivalCity;
+        private LocalTime departureTime;
+        private LocalTime arrivalTime;
+        private int arrivalDayOffset;
+        private TrainType trainType;
+        private Money priceFirst;
+        private Money priceSecond;
+        private DaySet dayPattern;
+        private boolean valid;
+        private List<String> messages;
+
+        RouteLine(int lineNo) {
+            this.lineNo = lineNo;
+        }
+
+        void addMessage(String message) {
+            if (messages == null) {
+                messages = new ArrayList<>(1);
+            }
+            messages.add(message);
+        }
+
+        void printMessages() {
+            if (messages == null) return;
+            for (String message : messages) {
+                System.err.println(message);
+            }
+        }
+    }
+}
@@ -1,30 +1,48 @@
 package persistence;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.*;
+import java.time.DayOfWeek;
 import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.stream.Stream;
+import model.DaySet;
+import model.Route;
+import model.Station;
+import model.StationRegistry;
+import parser.CSVRouteParser;
 
 /**
- * DataLoader reads CSV file and loads data into STATION, ROUTE, and ROUTE_DAY tables.
+ * DataLoader loads routes into STATION, ROUTE, and ROUTE_DAY tables.
  */
 public class DataLoader {
     
-    // Time formatter not needed as we parse directly to LocalTime
     private Connection connection;
     private Map<String, Integer> stationCache; // city -> station_id
-    private char delimiter; // Detected CSV delimiter (comma or semicolon)
+    private final StationRegistry stationRegistry; // city -> unique station code
     
     /**
      * Constructor initializes connection and station cache.
      */
     public DataLoader() throws SQLException {
+        this(new StationRegistry());
+    }
+    
+    /**
+     * Constructor using a shared StationRegistry, so that station codes in the database
+     * match the codes of the stations the route parser creates.
+     * 
+     * @param stationRegistry registry that assigns station codes
+     */
+    public DataLoader(StationRegistry stationRegistry) throws SQLException {
+        if (stationRegistry == null) {
+            throw new IllegalArgumentException("Station registry cannot be null");
+        }
         this.connection = Database.getConnection();
         this.stationCache = new HashMap<>();
+        this.stationRegistry = stationRegistry;
     }
     
     /**
@@ -35,9 +53,43 @@ public class DataLoader {
      * @throws SQLException if database operations fail
      */
     public static void loadRoutes(String csvFilePath) throws IOException, SQLException {
+        loadRoutes(csvFilePath, new StationRegistry());
+    }
+    
+    /**
+     * Loads routes from a CSV file, taking station codes from the given registry.
+     * The file is read by CSVRouteParser, the same parser RouteCatalogue uses.
+     * 
+     * @param csvFilePath path to the CSV file
+     * @param stationRegistry registry that assigns station codes
+     * @throws IOException if file reading fails
+     * @throws SQLException if database operations fail
+     */
+    public static void loadRoutes(String csvFilePath, StationRegistry stationRegistry)
+            throws IOException, SQLException {
+        System.out.println("Loading data from: " + csvFilePath);
+        try (Stream<Route> routes = new CSVRouteParser(stationRegistry).streamRoutes(csvFilePath)) {
+            loadRoutes(routes::iterator);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+    
+    /**
+     * Loads routes that were already parsed, e.g. by CSVRouteParser, so that the database
+     * holds exactly the routes the in-memory RouteCatalogue holds. The routes are inserted
+     * as the iterable yields them, so it may produce them while they are being loaded.
+     * 
+     * @param routes the routes to insert
+     * @throws SQLException if database operations fail
+     */
+    public static void loadRoutes(Iterable<Route> routes) throws SQLException {
+        if (routes == null) {
+            throw new IllegalArgumentException("Routes cannot be null");
+        }
         DataLoader loader = new DataLoader();
         try {
-            loader.loadDataFromCSV(csvFilePath);
+            loader.insertRoutes(routes);
             loader.connection.commit(); // Commit all changes
             System.out.println("Data loading completed successfully.");
         } catch (Exception e) {
@@ -49,176 +101,76 @@ public class DataLoader {
     }
     
     /**
-     * Loads data from CSV file into database.
-     * 
-     * @param csvFilePath path to CSV file
-     */
-    private void loadDataFromCSV(String csvFilePath) throws IOException, SQLException {
-        System.out.println("Loading data from: " + csvFilePath);
-        
-        try (BufferedReader reader = new BufferedReader(new FileReader(csvFilePath))) {
-            // Read and skip header row
-            String headerLine = reader.readLine();
-            if (headerLine == null) {
-                throw new IOException("CSV file is empty");
-            }
-            
-            // Detect delimiter (comma or semicolon)
-            delimiter = detectDelimiter(headerLine);
-            System.out.println("Detected delimiter: " + (delimiter == ',' ? "comma" : "semicolon"));
-            
-            int rowCount = 0;
-            int successCount = 0;
-            String line;
-            
-            // Process each data row
-            while ((line = reader.readLine()) != null) {
-                rowCount++;
-                
-                if (line.trim().isEmpty()) {
-                    continue; // Skip empty lines
-                }
-                
-                try {
-                    // Parse and process the row
-                    processRouteRow(line);
-                    successCount++;
-                    
-                    // Commit every 100 rows for better performance
-                    if (successCount % 100 == 0) {
-                        connection.commit();
-                        System.out.println("Processed " + successCount + " routes...");
-                    }
-                } catch (Exception e) {
-                    System.err.println("Error processing row " + rowCount + ": " + e.getMessage());
-                    // Continue processing other rows
-                }
-            }
-            
-            // Final commit
-            connection.commit();
-            System.out.println("Successfully processed " + successCount + " out of " + rowCount + " routes.");
-        }
-    }
-    
-    /**
-     * Detects CSV delimiter (comma or semicolon) by analyzing the header line.
+     * Counts the routes in the ROUTE table, e.g. to tell whether the database still holds
+     * the routes of an earlier import.
      * 
-     * @param headerLine the header row of the CSV
-     * @return the detected delimiter character
+     * @return the number of rows in ROUTE
+     * @throws SQLException if the database cannot be queried
      */
-    private char detectDelimiter(String headerLine) {
-        int commaCount = 0;
-        int semicolonCount = 0;
-        
-        // Count occurrences of each delimiter (ignoring quoted sections)
-        boolean inQuotes = false;
-        for (char c : headerLine.toCharArray()) {
-            if (c == '"') {
-                inQuotes = !inQuotes;
-            } else if (!inQuotes) {
-                if (c == ',') {
-                    commaCount++;
-                } else if (c == ';') {
-                    semicolonCount++;
-                }
-            }
+    public static int countRoutes() throws SQLException {
+        DataLoader loader = new DataLoader();
+        try (PreparedStatement stmt = loader.connection.prepareStatement("SELECT COUNT(*) FROM ROUTE");
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            loader.close();
         }
-        
-        // Return the delimiter with more occurrences
-        return (semicolonCount > commaCount) ? ';' : ',';
     }
     
     /**
-     * Parses a CSV line, handling quoted fields that may contain delimiters.
+     * Inserts routes into the database, committing every 100 routes.
      * 
-     * @param line the CSV line to parse
-     * @return array of field values
+     * @param routes the routes to insert
      */
-    private String[] parseCSVLine(String line) {
-        java.util.List<String> fields = new java.util.ArrayList<>();
-        StringBuilder currentField = new StringBuilder();
-        boolean inQuotes = false;
-        
-        for (int i = 0; i < line.length(); i++) {
-            char c = line.charAt(i);
-            
-            if (c == '"') {
-                if (inQuotes && i + 1 < line.length() && line.charAt(i + 1) == '"') {
-                    // Escaped quote
-                    currentField.append('"');
-                    i++; // Skip next quote
-                } else {
-                    // Toggle quote state
-                    inQuotes = !inQuotes;
+    private void insertRoutes(Iterable<Route> routes) throws SQLException {
+        int routeCount = 0;
+        int successCount = 0;
+        
+        for (Route route : routes) {
+            routeCount++;
+            try {
+                insertRoute(route);
+                successCount++;
+                
+                // Commit every 100 rows for better performance
+                if (successCount % 100 == 0) {
+                    connection.commit();
+                    System.out.println("Processed " + successCount + " routes...");
                 }
-            } else if (c == delimiter && !inQuotes) {
-                // Field separator found
-                fields.add(currentField.toString().trim());
-                currentField = new StringBuilder();
-            } else {
-                currentField.append(c);
+            } catch (SQLException e) {
+                System.err.println("Error inserting route " + route.getRouteId() + ": " + e.getMessage());
+                // Continue processing other routes
             }
         }
         
-        // Add the last field
-        fields.add(currentField.toString().trim());
-        
-        return fields.toArray(new String[0]);
+        // Final commit
+        connection.commit();
+        System.out.println("Successfully processed " + successCount + " out of " + routeCount + " routes.");
     }
     
     /**
-     * Processes a single route row from CSV.
-     * Expected columns: Route ID, Departure City, Arrival City, Departure Time,
-     * Arrival Time, Train Type, Days of Operation, First Class price, Second Class price
+     * Inserts one route, its stations and its days of operation.
+     * The train type is stored as the TrainType constant name (e.g. "TGV", "THALYS"), the
+     * form sample_data.sql uses, so TrainType.valueOf reads it back. Raw CSV labels such as
+     * "Thalys" or "Nightjet" are not stored.
      * 
-     * @param line the CSV line to process
+     * @param route the route to insert
+     * @return the generated route_id
      */
-    private void processRouteRow(String line) throws SQLException {
-        // Parse CSV line
-        String[] fields = parseCSVLine(line);
-        
-        if (fields.length < 9) {
-            throw new IllegalArgumentException("Expected at least 9 columns, found: " + fields.length);
-        }
-        
-        // Extract fields (trimming and handling empty values)
-        String routeId = fields[0].trim();
-        String depCity = fields[1].trim();
-        String arrCity = fields[2].trim();
-        String depTimeStr = fields[3].trim();
-        String arrTimeStr = fields[4].trim();
-        String trainType = fields[5].trim();
-        String daysOfOp = fields[6].trim();
-        String firstPriceStr = fields[7].trim();
-        String secondPriceStr = fields[8].trim();
-        
-        // Validate required fields
-        if (depCity.isEmpty() || arrCity.isEmpty() || depTimeStr.isEmpty() || arrTimeStr.isEmpty()) {
-            throw new IllegalArgumentException("Missing required fields: departure city, arrival city, or times");
-        }
-        
+    public int insertRoute(Route route) throws SQLException {
         // Get or create stations (prevents duplicates)
-        int originStationId = getOrCreateStation(connection, depCity);
-        int destinationStationId = getOrCreateStation(connection, arrCity);
-        
-        // Parse times to LocalTime
-        LocalTime departureTime = parseTime(depTimeStr);
-        LocalTime arrivalTime = parseTime(arrTimeStr);
+        int originStationId = getOrCreateStation(connection, route.getDepartureStation());
+        int destinationStationId = getOrCreateStation(connection, route.getArrivalStation());
         
-        // Parse prices
-        double firstPrice = Double.parseDouble(firstPriceStr);
-        double secondPrice = Double.parseDouble(secondPriceStr);
+        int routeId = insertRoute(originStationId, destinationStationId,
+                                  route.getDepartureTime(), route.getArrivalTime(),
+                                  route.getTrainType().name(),
+                                  route.getPriceFirstClass().getAmount().doubleValue(),
+                                  route.getPriceSecondClass().getAmount().doubleValue());
         
-        // Insert route into ROUTE table
-        int routeIdInt = insertRoute(originStationId, destinationStationId,
-                                    departureTime, arrivalTime, trainType,
-                                    firstPrice, secondPrice);
-        
-        // Insert route days into ROUTE_DAY table
-        if (!daysOfOp.isEmpty()) {
-            insertRouteDays(routeIdInt, daysOfOp);
-        }
+        insertRouteDays(routeId, route.getDayPattern());
+        return routeId;
     }
     
     /**
@@ -231,6 +183,20 @@ public class DataLoader {
      * @return station_id
      */
     public int getOrCreateStation(Connection conn, String city) throws SQLException {
+        return getOrCreateStation(conn, stationRegistry.intern(city));
+    }
+    
+    /**
+     * Gets or creates the database row of a station and returns its station_id.
+     * The row is looked up by city and created with the station's code.
+     * 
+     * @param conn database connection
+     * @param station the station, e.g. of a parsed Route
+     * @return station_id
+     */
+    public int getOrCreateStation(Connection conn, Station station) throws SQLException {
+        String city = station.getCity();
+        
         // Check cache first for performance
         if (stationCache.containsKey(city)) {
             return stationCache.get(city);
@@ -254,7 +220,7 @@ public class DataLoader {
         try (PreparedStatement stmt = conn.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS)) {
             String name = city; // Use city name as station name
             String country = "Unknown"; // Default country (could be enhanced with country detection)
-            String code = generateStationCode(city);
+            String code = station.getCode(); // unique, unlike the plain 3-letter code
             
             stmt.setString(1, name);
             stmt.setString(2, city);
@@ -319,170 +285,23 @@ public class DataLoader {
     
     /**
      * Inserts route days into ROUTE_DAY table.
-     * Parses days string in various formats: "Mon,Wed,Fri", "Mon-Fri", "Daily", "Sat-Sun", etc.
      * 
      * @param routeId foreign key to ROUTE
-     * @param daysString days of operation string
+     * @param days days of operation
      */
-    public void insertRouteDays(int routeId, String daysString) throws SQLException {
-        daysString = daysString.trim();
-        
-        // Remove quotes if present
-        if (daysString.startsWith("\"") && daysString.endsWith("\"")) {
-            daysString = daysString.substring(1, daysString.length() - 1);
-        }
-        
-        // Parse days pattern into array of day numbers (1=Monday, 7=Sunday)
-        int[] days = parseDaysOfOperation(daysString);
-        
-        if (days.length == 0) {
-            return; // No valid days found
-        }
-        
-        // Insert each day into ROUTE_DAY table
+    public void insertRouteDays(int routeId, DaySet days) throws SQLException {
         String sql = "INSERT INTO ROUTE_DAY (route_id, day_of_week) VALUES (?, ?) " +
                      "ON DUPLICATE KEY UPDATE route_id = route_id";
         
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            for (int day : days) {
-                stmt.setInt(1, routeId);
-                stmt.setInt(2, day); // day_of_week: 1=Monday, 7=Sunday
-                stmt.executeUpdate();
-            }
-        }
-    }
-    
-    /**
-     * Parses days of operation string into array of day numbers (1-7).
-     * Supports multiple formats:
-     * - "Daily" → all 7 days
-     * - "Mon-Fri" → Monday through Friday
-     * - "Fri-Sun" → Friday through Sunday (wraps around)
-     * - "Mon,Wed,Fri" → specific days
-     * - "Sat-Sun" → weekend
-     * 
-     * @param daysStr days of operation string
-     * @return array of day numbers (1=Monday, 7=Sunday)
-     */
-    private int[] parseDaysOfOperation(String daysStr) {
-        daysStr = daysStr.trim();
-        
-        // Handle "Daily" - all 7 days
-        if (daysStr.equalsIgnoreCase("Daily")) {
-            return new int[]{1, 2, 3, 4, 5, 6, 7};
-        }
-        
-        // Handle range like "Mon-Fri" or "Fri-Sun"
-        if (daysStr.contains("-")) {
-            String[] parts = daysStr.split("-");
-            if (parts.length == 2) {
-                int start = dayNameToNumber(parts[0].trim());
-                int end = dayNameToNumber(parts[1].trim());
-                
-                if (start > 0 && end > 0) {
-                    java.util.List<Integer> dayList = new java.util.ArrayList<>();
-                    
-                    if (end >= start) {
-                        // Normal range (e.g., Mon-Fri)
-                        for (int i = start; i <= end; i++) {
-                            dayList.add(i);
-                        }
-                    } else {
-                        // Wraps around (e.g., Fri-Sun)
-                        for (int i = start; i <= 7; i++) {
-                            dayList.add(i);
-                        }
-                        for (int i = 1; i <= end; i++) {
-                            dayList.add(i);
-                        }
-                    }
-                    
-                    return dayList.stream().mapToInt(i -> i).toArray();
+            for (DayOfWeek day : DayOfWeek.values()) {
+                if (days.isOperatingOn(day)) {
+                    stmt.setInt(1, routeId);
+                    stmt.setInt(2, day.getValue()); // day_of_week: 1=Monday, 7=Sunday
+                    stmt.executeUpdate();
                 }
             }
         }
-        
-        // Handle comma-separated list like "Mon,Wed,Fri"
-        if (daysStr.contains(",")) {
-            String[] parts = daysStr.split(",");
-            java.util.List<Integer> dayList = new java.util.ArrayList<>();
-            for (String part : parts) {
-                int day = dayNameToNumber(part.trim());
-                if (day > 0) {
-                    dayList.add(day);
-                }
-            }
-            return dayList.stream().mapToInt(i -> i).toArray();
-        }
-        
-        // Single day
-        int day = dayNameToNumber(daysStr);
-        if (day > 0) {
-            return new int[]{day};
-        }
-        
-        return new int[0];
-    }
-    
-    /**
-     * Converts day name abbreviation to day number.
-     * 1=Monday, 2=Tuesday, 3=Wednesday, 4=Thursday, 5=Friday, 6=Saturday, 7=Sunday
-     * 
-     * @param dayName day name (e.g., "Mon", "Monday", "Tue")
-     * @return day number (1-7) or 0 if invalid
-     */
-    private int dayNameToNumber(String dayName) {
-        String day = dayName.substring(0, Math.min(3, dayName.length())).toLowerCase();
-        switch (day) {
-            case "mon": return 1;
-            case "tue": return 2;
-            case "wed": return 3;
-            case "thu": return 4;
-            case "fri": return 5;
-            case "sat": return 6;
-            case "sun": return 7;
-            default: return 0;
-        }
-    }
-    
-    /**
-     * Parses time string to LocalTime.
-     * Handles formats like "08:15", "08:15:00", or "08:08 (+1d)".
-     * 
-     * @param timeStr time string
-     * @return LocalTime object
-     */
-    private LocalTime parseTime(String timeStr) {
-        // Remove any additional info like "(+1d)" for next-day arrivals
-        timeStr = timeStr.trim();
-        if (timeStr.contains("(")) {
-            timeStr = timeStr.substring(0, timeStr.indexOf("(")).trim();
-        }
-        
-        // Extract HH:mm part
-        String[] parts = timeStr.split(":");
-        if (parts.length >= 2) {
-            int hour = Integer.parseInt(parts[0]);
-            int minute = Integer.parseInt(parts[1]);
-            return LocalTime.of(hour, minute);
-        }
-        
-        throw new IllegalArgumentException("Invalid time format: " + timeStr);
-    }
-    
-    /**
-     * Generates a 3-letter station code from city name.
-     * Extracts uppercase letters and takes first 3 characters.
-     * 
-     * @param cityName city name
-     * @return 3-letter station code
-     */
-    private String generateStationCode(String cityName) {
-        String letters = cityName.toUpperCase().replaceAll("[^A-Z]", "");
-        if (letters.isEmpty()) {
-            return "XXX";
-        }
-        return letters.substring(0, Math.min(3, letters.length()));
     }
     
     /**
@@ -0,0 +1,197 @@
+package persistence;
+
+import model.*;
+import repository.RouteCatalogue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Test class to verify RouteCatalogue.find against a plain linear filter.
+ * Loads the bundled CSV file, runs fixed and random search criteria through both and
+ * reports every query where the results differ. No database is needed.
+ */
+public class TestRouteCatalogueFind {
+    private static final int RANDOM_QUERIES = 20_000;
+    // A Monday, so that the seven dates after it cover every day of the week
+    private static final LocalDate FIRST_DATE = LocalDate.of(2026, 10, 19);
+
+    public static void main(String[] args) {
+        System.out.println("=== Testing RouteCatalogue.find ===");
+
+        System.out.println("\n1. Loading routes from CSV...");
+        String csvPath = "src/db/eu_rail_network.csv"; // Use relative path from project root
+        RouteCatalogue catalogue = new RouteCatalogue();
+        try {
+            catalogue.loadRoutesFromCSV(csvPath);
+        } catch (IOException e) {
+            System.err.println("   ✗ Could not read " + csvPath + ": " + e.getMessage());
+            System.err.println("   Current directory: " + System.getProperty("user.dir"));
+            return;
+        }
+        List<Route> routes = catalogue.getAllRoutes();
+        System.out.println("   ✓ Routes loaded: " + routes.size());
+
+        Set<Station> stations = new LinkedHashSet<>();
+        Set<Station> departureStations = new HashSet<>();
+        for (Route route : routes) {
+            stations.add(route.getDepartureStation());
+            stations.add(route.getArrivalStation());
+            departureStations.add(route.getDepartureStation());
+        }
+        List<Station> stationList = new ArrayList<>(stations);
+
+        // Stations that routes arrive at but never leave have no departure index entry
+        System.out.println("\n2. Checking arrival-only stations...");
+        int failures = 0;
+        int arrivalOnly = 0;
+        for (Station station : stationList) {
+            if (departureStations.contains(station)) {
+                continue;
+            }
+            arrivalOnly++;
+            for (int day = 0; day < 7; day++) {
+                LocalDate date = FIRST_DATE.plusDays(day);
+                failures += check(catalogue, routes, new SearchCriteria(station, null, date));
+                failures += check(catalogue, routes, new SearchCriteria(null, station, date));
+                failures += check(catalogue, routes, new SearchCriteria(station, station, date));
+                for (Station other : stationList) {
+                    failures += check(catalogue, routes, new SearchCriteria(other, station, date));
+                    failures += check(catalogue, routes, new SearchCriteria(station, other, date));
+                }
+            }
+        }
+        if (arrivalOnly == 0) {
+            System.out.println("   - No arrival-only station in " + csvPath);
+        } else {
+            System.out.println("   Arrival-only stations checked: " + arrivalOnly);
+        }
+
+        System.out.println("\n3. Checking stations that are not in the catalogue...");
+        Station unknown = new Station("Nowhere", "Nowhere", "XX", "ZZZ-UNKNOWN");
+        failures += check(catalogue, routes, new SearchCriteria(unknown, null, null));
+        failures += check(catalogue, routes, new SearchCriteria(null, unknown, FIRST_DATE));
+        failures += check(catalogue, routes, new SearchCriteria(stationList.get(0), unknown, FIRST_DATE));
+
+        System.out.println("\n4. Checking " + RANDOM_QUERIES + " random criteria...");
+        Random random = new Random(42);
+        long matched = 0;
+        for (int i = 0; i < RANDOM_QUERIES; i++) {
+            SearchCriteria criteria = randomCriteria(random, stationList);
+            failures += check(catalogue, routes, criteria);
+            matched += catalogue.find(criteria).size();
+        }
+        System.out.println("   Routes matched in total: " + matched);
+
+        if (failures == 0) {
+            System.out.println("\n   ✓ find() returned the same routes as the linear filter for every query");
+        } else {
+            System.err.println("\n   ✗ " + failures + " queries differ from the linear filter");
+        }
+        System.out.println("\n=== Test Complete ===");
+    }
+
+    /**
+     * Compares find() with the linear filter for one query, printing the criteria if they differ.
+     *
+     * @return 1 if the results differ, 0 otherwise
+     */
+    private static int check(RouteCatalogue catalogue, List<Route> routes, SearchCriteria criteria) {
+        List<Route> expected = new ArrayList<>();
+        for (Route route : routes) {
+            if (matchesCriteria(route, criteria)) {
+                expected.add(route);
+            }
+        }
+        List<Route> actual = catalogue.find(criteria);
+        if (expected.equals(actual)) {
+            return 0;
+        }
+        System.err.println("   ✗ " + criteria + ": expected " + expected.size() + " routes, find() returned " +
+                           actual.size());
+        return 1;
+    }
+
+    private static SearchCriteria randomCriteria(Random random, List<Station> stations) {
+        SearchCriteria criteria = new SearchCriteria();
+        if (random.nextInt(3) > 0) {
+            criteria.setDepartureStation(stations.get(random.nextInt(stations.size())));
+        }
+        if (random.nextInt(3) > 0) {
+            criteria.setArrivalStation(stations.get(random.nextInt(stations.size())));
+        }
+        if (random.nextInt(4) > 0) {
+            criteria.setDepartureDate(FIRST_DATE.plusDays(random.nextInt(7)));
+        }
+        if (random.nextInt(3) == 0) {
+            criteria.setPreferredTime(LocalTime.of(random.nextInt(24), random.nextInt(60)));
+        }
+        if (random.nextInt(4) == 0) {
+            TrainType[] types = TrainType.values();
+            criteria.setPreferredTrainType(types[random.nextInt(types.length)]);
+        }
+        if (random.nextInt(3) == 0) {
+            criteria.setMaxPrice(new Money(new BigDecimal(random.nextInt(30_000)).movePointLeft(2), "EUR"));
+        }
+        int ticketClass = random.nextInt(3);
+        if (ticketClass == 1) {
+            criteria.setTicketClass(TicketClass.FIRST_CLASS);
+        } else if (ticketClass == 2) {
+            criteria.setTicketClass(TicketClass.SECOND_CLASS);
+        }
+        return criteria;
+    }
+
+    /**
+     * The filter RouteCatalogue.find used before it had indexes, with the preferred time
+     * window wrapping around midnight as find() does now.
+     */
+    private static boolean matchesCriteria(Route route, SearchCriteria criteria) {
+        if (criteria.getDepartureStation() != null &&
+            !route.getDepartureStation().equals(criteria.getDepartureStation())) {
+            return false;
+        }
+
+        if (criteria.getArrivalStation() != null &&
+            !route.getArrivalStation().equals(criteria.getArrivalStation())) {
+            return false;
+        }
+
+        if (criteria.getDepartureDate() != null &&
+            !route.getDayPattern().isOperatingOn(criteria.getDepartureDate().getDayOfWeek())) {
+            return false;
+        }
+
+        if (criteria.getPreferredTime() != null) {
+            long timeDiff = Math.abs(route.getDepartureTime().toSecondOfDay() -
+                                     criteria.getPreferredTime().toSecondOfDay());
+            timeDiff = Math.min(timeDiff, 86400 - timeDiff);
+            if (timeDiff > RouteCatalogue.PREFERRED_TIME_WINDOW_MINUTES * 60L) {
+                return false;
+            }
+        }
+
+        if (criteria.getPreferredTrainType() != null &&
+            route.getTrainType() != criteria.getPreferredTrainType()) {
+            return false;
+        }
+
+        if (criteria.getMaxPrice() != null) {
+            Money routePrice = criteria.getTicketClass() == TicketClass.FIRST_CLASS ?
+                route.getPriceFirstClass() : route.getPriceSecondClass();
+            if (routePrice.getAmount().compareTo(criteria.getMaxPrice().getAmount()) > 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
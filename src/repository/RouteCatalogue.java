@@ -3,10 +3,17 @@ package repository;
 import model.*;
 import parser.CSVRouteParser;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.DayOfWeek;
 import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 /**
  * RouteCatalogue maintains a collection of Route objects and provides search functionality.
@@ -18,17 +25,77 @@ import java.util.stream.Collectors;
  * - Route Catalog contains a List<Route>
  * - Provides loadFromCsv(path: String) method
  * - Provides getAllRoutes() method
+ *
+ * The routes are stored in a RouteTable, column by column, and Route objects are only
+ * created for the routes a caller gets back. Routes are referred to by their row in the
+ * table, which is also their position in the catalogue. The table can be saved as a binary
+ * snapshot of its CSV file and mapped back in on the next start (see RouteSnapshot).
+ *
+ * The catalogue also keeps secondary indexes, built when routes are loaded or added:
+ * one partition of the rows per day of the week (from each route's DaySet), and the
+ * rows by departure station, by arrival station, by (departure, arrival) pair and by
+ * train type. find() asks every index that matches a populated SearchCriteria field for
+ * its rows, scans only the smallest of these lists and checks the remaining criteria
+ * on the table columns of each row. Every index list is in catalogue order, so results
+ * are too.
+ *
+ * For each departure station the catalogue also keeps the departure minutes of its routes
+ * as a sorted int array. A preferred departure time is answered with binary searches for
+ * both ends of its window, and the same array gives the next departures after a time.
+ * In the same way, a maximum price is answered from the rows sorted by their price in
+ * cents, one array per ticket class.
+ *
+ * Every change to the routes increments a version number, which lets caches and search
+ * indexes built from the catalogue detect that they are out of date.
+ *
+ * find and getNextDepartures may run on several threads at once, as long as no thread
+ * changes the routes meanwhile; the indexes they build on first use are published whole.
  */
 public class RouteCatalogue {
-    private List<Route> routes;
+    /**
+     * How far (in minutes, either way) a departure may be from the preferred time.
+     */
+    public static final int PREFERRED_TIME_WINDOW_MINUTES = 120;
+
+    private static final int SECONDS_PER_DAY = Route.MINUTES_PER_DAY * 60;
+
+    private RouteTable table;
+    private final RowList[] rowsByDay;
+    // Indexed by station code id (see RouteTable.codeId)
+    private final List<RowList> rowsByDeparture;
+    private final List<RowList> rowsByArrival;
+    private final Map<Long, RowList> rowsByStationPair;
+    private final RowList[] rowsByTrainType;
+    // Built on first use per departure code id, dropped when a route from that station is added.
+    // Both caches are replaced, never changed in place, so concurrent finds can fill them.
+    private volatile DepartureTimes[] departureTimesByStation;
+    // Built on first use per ticket class (by ordinal), dropped whenever the routes change
+    private volatile PriceIndex[] priceIndexes;
     private CSVRouteParser parser;
+    private final AtomicLong version = new AtomicLong();
 
     /**
      * Constructs an empty RouteCatalogue.
      */
     public RouteCatalogue() {
-        this.routes = new ArrayList<>();
-        this.parser = new CSVRouteParser();
+        this(new StationRegistry());
+    }
+
+    /**
+     * Constructs an empty RouteCatalogue whose loaded routes take their stations from
+     * the given registry.
+     *
+     * @param stationRegistry the registry shared with other loaders of the same data
+     */
+    public RouteCatalogue(StationRegistry stationRegistry) {
+        this.table = new RouteTable();
+        this.rowsByDay = new RowList[DayOfWeek.values().length];
+        this.rowsByDeparture = new ArrayList<>();
+        this.rowsByArrival = new ArrayList<>();
+        this.rowsByStationPair = new HashMap<>();
+        this.rowsByTrainType = new RowList[TrainType.values().length];
+        this.parser = new CSVRouteParser(stationRegistry);
+        clearIndexes();
     }
 
     /**
@@ -39,7 +106,169 @@ public class RouteCatalogue {
      * @throws IOException if the file cannot be read
      */
     public void loadRoutesFromCSV(String filePath) throws IOException {
-        this.routes = parser.parseRoutes(filePath);
+        try (Stream<Route> routes = parser.streamRoutes(filePath)) {
+            loadRoutes(routes);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Replaces the routes of the catalogue with the routes of a stream, storing each one
+     * as it arrives so the routes are never all held as objects at once.
+     *
+     * @param routes the routes to load; the caller closes the stream
+     */
+    public void loadRoutes(Stream<Route> routes) {
+        if (routes == null) {
+            throw new IllegalArgumentException("Routes cannot be null");
+        }
+        this.table = RouteTable.of(routes);
+        rebuildIndexes();
+        version.incrementAndGet();
+    }
+
+    /**
+     * Loads routes from a binary snapshot of the CSV file when it has a valid one, and
+     * from the CSV file otherwise, writing a new snapshot afterwards. A snapshot that
+     * cannot be written is reported on System.err; the routes are loaded either way.
+     *
+     * @param filePath path to the CSV file containing route data
+     * @param snapshotPath path of the snapshot file
+     * @throws IOException if the CSV file cannot be read
+     */
+    public void loadRoutesFromCSV(String filePath, String snapshotPath) throws IOException {
+        if (loadSnapshot(snapshotPath, filePath)) {
+            return;
+        }
+        loadRoutesFromCSV(filePath);
+        try {
+            writeSnapshot(snapshotPath, filePath);
+        } catch (IOException e) {
+            System.err.println("Could not write route snapshot " + snapshotPath + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replaces the routes of the catalogue with those of a snapshot written by
+     * writeSnapshot, if the snapshot was taken from the CSV file as it is now and is
+     * intact. The file is memory-mapped and read column by column; no CSV parsing or
+     * Route objects are involved.
+     *
+     * @param snapshotPath path of the snapshot file
+     * @param sourcePath path of the CSV file the snapshot must have been taken from
+     * @return true if the routes were loaded, false if the snapshot is missing, stale or damaged
+     */
+    public boolean loadSnapshot(String snapshotPath, String sourcePath) {
+        RouteTable loaded = RouteSnapshot.read(Paths.get(snapshotPath), Paths.get(sourcePath),
+                                               getStationRegistry());
+        if (loaded == null) {
+            return false;
+        }
+        this.table = loaded;
+        rebuildIndexes();
+        version.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Saves the routes of the catalogue as a snapshot of the given CSV file, for
+     * loadSnapshot on a later start.
+     *
+     * @param snapshotPath path of the snapshot file
+     * @param sourcePath path of the CSV file the routes were loaded from
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void writeSnapshot(String snapshotPath, String sourcePath) throws IOException {
+        RouteSnapshot.write(table, Paths.get(snapshotPath), Paths.get(sourcePath));
+    }
+
+    /**
+     * Replaces the routes of the catalogue with routes parsed elsewhere, e.g. by an import
+     * that also writes them to the database.
+     *
+     * @param routes the routes to load
+     */
+    public void loadRoutes(List<Route> routes) {
+        if (routes == null) {
+            throw new IllegalArgumentException("Routes cannot be null");
+        }
+        this.table = RouteTable.of(routes);
+        rebuildIndexes();
+        version.incrementAndGet();
+    }
+
+    /**
+     * Returns a catalogue holding a column-by-column copy of the routes, sharing the station
+     * registry. Later changes to either catalogue do not affect the other.
+     *
+     * @return the copy
+     */
+    public RouteCatalogue copy() {
+        RouteCatalogue copy = new RouteCatalogue(getStationRegistry());
+        copy.table = table.copy();
+        copy.rebuildIndexes();
+        copy.version.incrementAndGet();
+        return copy;
+    }
+
+    private void rebuildIndexes() {
+        clearIndexes();
+        for (int row = 0; row < table.size(); row++) {
+            addToIndexes(row);
+        }
+    }
+
+    private void clearIndexes() {
+        for (int i = 0; i < rowsByDay.length; i++) {
+            rowsByDay[i] = new RowList();
+        }
+        for (int i = 0; i < rowsByTrainType.length; i++) {
+            rowsByTrainType[i] = new RowList();
+        }
+        rowsByDeparture.clear();
+        rowsByArrival.clear();
+        rowsByStationPair.clear();
+        departureTimesByStation = new DepartureTimes[0];
+        priceIndexes = new PriceIndex[TicketClass.values().length];
+    }
+
+    private void addToIndexes(int row) {
+        int mask = table.dayMask(row);
+        for (DayOfWeek day : DayOfWeek.values()) {
+            if ((mask & RouteTable.dayBit(day)) != 0) {
+                rowsByDay[day.ordinal()].add(row);
+            }
+        }
+        int departure = table.departureCode(row);
+        int arrival = table.arrivalCode(row);
+        rowsAt(rowsByDeparture, departure).add(row);
+        rowsAt(rowsByArrival, arrival).add(row);
+        rowsByStationPair.computeIfAbsent(stationPairKey(departure, arrival), k -> new RowList()).add(row);
+        rowsByTrainType[table.trainTypeOrdinal(row)].add(row);
+        if (departure < departureTimesByStation.length && departureTimesByStation[departure] != null) {
+            DepartureTimes[] dropped = departureTimesByStation.clone();
+            dropped[departure] = null;
+            departureTimesByStation = dropped;
+        }
+        priceIndexes = new PriceIndex[TicketClass.values().length];
+    }
+
+    private static RowList rowsAt(List<RowList> byCode, int codeId) {
+        while (byCode.size() <= codeId) {
+            byCode.add(new RowList());
+        }
+        return byCode.get(codeId);
+    }
+
+    // A station that only ever appears on the other side of its routes has a code id past
+    // the end of the list
+    private static RowList rowsOf(List<RowList> byCode, int codeId) {
+        return codeId < byCode.size() ? byCode.get(codeId) : RowList.EMPTY;
+    }
+
+    private static long stationPairKey(int departureCode, int arrivalCode) {
+        return ((long) departureCode << 32) | arrivalCode;
     }
 
     /**
@@ -49,76 +278,109 @@ public class RouteCatalogue {
      * @return a list of routes that match all specified criteria
      */
     public List<Route> find(SearchCriteria criteria) {
+        List<Route> matches = new ArrayList<>();
         if (criteria == null) {
-            return new ArrayList<>();
+            return matches;
+        }
+        RowFilter filter = new RowFilter(criteria);
+        if (filter.matchesNothing) {
+            return matches;
         }
-        
-        return routes.stream()
-            .filter(route -> matchesCriteria(route, criteria))
-            .collect(Collectors.toList());
+
+        RowList candidates = planCandidates(criteria, filter);
+        if (candidates == null) {
+            for (int row = 0; row < table.size(); row++) {
+                if (filter.matches(row)) {
+                    matches.add(table.route(row));
+                }
+            }
+        } else {
+            for (int i = 0; i < candidates.size; i++) {
+                int row = candidates.rows[i];
+                if (filter.matches(row)) {
+                    matches.add(table.route(row));
+                }
+            }
+        }
+        return matches;
     }
 
     /**
-     * Checks if a route matches all specified criteria.
-     * 
-     * @param route the route to check
+     * Picks the smallest list of rows that all matching routes must come from, using
+     * the index of each populated criteria field.
+     *
      * @param criteria the search criteria
-     * @return true if the route matches all criteria, false otherwise
+     * @param filter the criteria resolved against the table
+     * @return the candidate rows in catalogue order, or null if every row is a candidate
      */
-    private boolean matchesCriteria(Route route, SearchCriteria criteria) {
-        // Match departure station (using equals() which compares by code)
-        if (criteria.getDepartureStation() != null &&
-            !route.getDepartureStation().equals(criteria.getDepartureStation())) {
-            return false;
+    private RowList planCandidates(SearchCriteria criteria, RowFilter filter) {
+        RowList best = null;
+        if (filter.departureCode >= 0 && filter.arrivalCode >= 0) {
+            best = smaller(best, rowsByStationPair.get(stationPairKey(filter.departureCode, filter.arrivalCode)));
+        } else if (filter.departureCode >= 0) {
+            best = smaller(best, rowsOf(rowsByDeparture, filter.departureCode));
+        } else if (filter.arrivalCode >= 0) {
+            best = smaller(best, rowsOf(rowsByArrival, filter.arrivalCode));
         }
-
-        // Match arrival station (using equals() which compares by code)
-        if (criteria.getArrivalStation() != null &&
-            !route.getArrivalStation().equals(criteria.getArrivalStation())) {
-            return false;
+        if (filter.trainType >= 0) {
+            best = smaller(best, rowsByTrainType[filter.trainType]);
         }
-
-        // Match operating day
-        if (criteria.getDepartureDate() != null &&
-            !route.getDayPattern().isOperatingOn(criteria.getDepartureDate().getDayOfWeek())) {
-            return false;
+        if (criteria.getDepartureDate() != null) {
+            best = smaller(best, rowsByDay[criteria.getDepartureDate().getDayOfWeek().ordinal()]);
         }
-
-        // Match preferred departure time (within 2 hours)
-        if (criteria.getPreferredTime() != null) {
-            LocalTime routeTime = route.getDepartureTime();
-            LocalTime preferredTime = criteria.getPreferredTime();
-            long timeDiff = Math.abs(routeTime.toSecondOfDay() - preferredTime.toSecondOfDay());
-            if (timeDiff > 7200) { // 2 hours in seconds
-                return false;
+        if (filter.departureCode >= 0 && criteria.getPreferredTime() != null && sizeOf(best) > 0) {
+            DepartureTimes times = departureTimes(filter.departureCode);
+            int preferred = minuteOfDay(criteria.getPreferredTime());
+            int[] window = times.rangesWithin(preferred - PREFERRED_TIME_WINDOW_MINUTES,
+                                              preferred + PREFERRED_TIME_WINDOW_MINUTES);
+            if (DepartureTimes.count(window) < sizeOf(best)) {
+                best = times.rowsIn(window);
             }
         }
-
-        // Match preferred train type
-        if (criteria.getPreferredTrainType() != null &&
-            route.getTrainType() != criteria.getPreferredTrainType()) {
-            return false;
+        if (criteria.getMaxPrice() != null && sizeOf(best) > 0) {
+            PriceIndex prices = priceIndex(filter.ticketClass);
+            int affordable = prices.countAtMost(filter.maxCents);
+            // Collecting the cheapest rows means sorting them back into catalogue order, so
+            // the price index is only used when it has fewer rows than the other candidates
+            if (affordable < sizeOf(best)) {
+                RowList cheapest = prices.cheapest(affordable);
+                best = best == null ? cheapest : intersect(best, cheapest);
+            }
         }
+        return best;
+    }
 
-        // Match maximum price (based on ticket class preference)
-        if (criteria.getMaxPrice() != null) {
-            Money routePrice;
-            if (criteria.getTicketClass() != null) {
-                // Use the specified ticket class
-                routePrice = (criteria.getTicketClass() == TicketClass.FIRST_CLASS) ?
-                    route.getPriceFirstClass() : route.getPriceSecondClass();
+    // Rows in both lists; both are in catalogue order, and so is the result
+    private static RowList intersect(RowList a, RowList b) {
+        RowList both = new RowList();
+        int i = 0;
+        int j = 0;
+        while (i < a.size && j < b.size) {
+            int rowA = a.rows[i];
+            int rowB = b.rows[j];
+            if (rowA == rowB) {
+                both.add(rowA);
+                i++;
+                j++;
+            } else if (rowA < rowB) {
+                i++;
             } else {
-                // Default to second class if no preference specified
-                routePrice = route.getPriceSecondClass();
-            }
-            
-            // Check if route price is within budget
-            if (routePrice.getAmount().compareTo(criteria.getMaxPrice().getAmount()) > 0) {
-                return false;
+                j++;
             }
         }
+        return both;
+    }
+
+    private RowList smaller(RowList current, RowList indexed) {
+        if (indexed == null) {
+            // Nothing is indexed under this key, so nothing can match
+            return RowList.EMPTY;
+        }
+        return indexed.size < sizeOf(current) ? indexed : current;
+    }
 
-        return true;
+    private int sizeOf(RowList rows) {
+        return rows != null ? rows.size : table.size();
     }
 
     /**
@@ -128,7 +390,111 @@ public class RouteCatalogue {
      * @return a copy of all routes in the catalogue
      */
     public List<Route> getAllRoutes() {
-        return new ArrayList<>(routes);
+        return new ArrayList<>(table.routes());
+    }
+
+    /**
+     * Returns the routes operating on the given day of the week, in catalogue order.
+     * Partitions are built when routes are loaded or added, so later changes to a
+     * route's DaySet are not reflected.
+     *
+     * @param dayOfWeek the day of the week
+     * @return an unmodifiable list of the routes running on that day
+     */
+    public List<Route> getRoutesOperatingOn(DayOfWeek dayOfWeek) {
+        return rowsByDay[dayOfWeek.ordinal()].routes(table);
+    }
+
+    /**
+     * Returns the routes from one station directly to another, in catalogue order.
+     *
+     * @param departure the departure station
+     * @param arrival the arrival station
+     * @return an unmodifiable list of the direct routes, empty if there are none
+     */
+    public List<Route> getRoutesBetween(Station departure, Station arrival) {
+        int departureCode = table.codeId(departure);
+        int arrivalCode = table.codeId(arrival);
+        RowList direct = departureCode >= 0 && arrivalCode >= 0 ?
+            rowsByStationPair.get(stationPairKey(departureCode, arrivalCode)) : null;
+        return (direct != null ? direct : RowList.EMPTY).routes(table);
+    }
+
+    /**
+     * Returns the routes leaving a station at or after the given time on the same day,
+     * earliest first.
+     *
+     * @param departure the departure station
+     * @param time the earliest departure time
+     * @param limit the maximum number of routes to return
+     * @return up to limit routes sorted by departure time
+     */
+    public List<Route> getNextDepartures(Station departure, LocalTime time, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be at least 1");
+        }
+        List<Route> next = new ArrayList<>();
+        int departureCode = table.codeId(departure);
+        if (departureCode < 0) {
+            return next;
+        }
+        DepartureTimes times = departureTimes(departureCode);
+        for (int i = times.firstAtOrAfter(minuteOfDay(time)); i < times.size() && next.size() < limit; i++) {
+            // Minutes are truncated, so a route in the same minute may still leave earlier
+            if (times.minute(i) * 60 >= time.toSecondOfDay()) {
+                next.add(table.route(times.row(i)));
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Returns the registry that the stations of loaded routes come from.
+     *
+     * @return the station registry
+     */
+    public StationRegistry getStationRegistry() {
+        return parser.getStationRegistry();
+    }
+
+    /**
+     * Returns the table the routes are stored in, for searches that work on its columns.
+     * The table is replaced by loadRoutesFromCSV, loadRoutes and clearRoutes.
+     *
+     * @return the route table
+     */
+    public RouteTable getRouteTable() {
+        return table;
+    }
+
+    // Two finds may build the same entry at once, or replace each other's new entries;
+    // either way a later find just builds the missing one again
+    private DepartureTimes departureTimes(int departureCode) {
+        DepartureTimes[] cached = departureTimesByStation;
+        DepartureTimes times = departureCode < cached.length ? cached[departureCode] : null;
+        if (times == null) {
+            times = new DepartureTimes(table, rowsOf(rowsByDeparture, departureCode));
+            DepartureTimes[] updated = Arrays.copyOf(cached, Math.max(cached.length, departureCode + 1));
+            updated[departureCode] = times;
+            departureTimesByStation = updated;
+        }
+        return times;
+    }
+
+    private PriceIndex priceIndex(TicketClass ticketClass) {
+        PriceIndex[] cached = priceIndexes;
+        PriceIndex prices = cached[ticketClass.ordinal()];
+        if (prices == null) {
+            prices = new PriceIndex(table, ticketClass);
+            PriceIndex[] updated = cached.clone();
+            updated[ticketClass.ordinal()] = prices;
+            priceIndexes = updated;
+        }
+        return prices;
+    }
+
+    private static int minuteOfDay(LocalTime time) {
+        return time.getHour() * 60 + time.getMinute();
     }
 
     /**
@@ -138,7 +504,8 @@ public class RouteCatalogue {
      */
     public void addRoute(Route route) {
         if (route != null) {
-            routes.add(route);
+            addToIndexes(table.append(route));
+            version.incrementAndGet();
         }
     }
 
@@ -146,7 +513,19 @@ public class RouteCatalogue {
      * Removes all routes from the catalogue.
      */
     public void clearRoutes() {
-        routes.clear();
+        table = new RouteTable();
+        clearIndexes();
+        version.incrementAndGet();
+    }
+
+    /**
+     * Returns the version of the catalogue data, incremented by every call to
+     * loadRoutesFromCSV, loadRoutes, addRoute and clearRoutes.
+     *
+     * @return the current version number
+     */
+    public long getVersion() {
+        return version.get();
     }
 
     /**
@@ -155,7 +534,7 @@ public class RouteCatalogue {
      * @return the count of routes
      */
     public int getRouteCount() {
-        return routes.size();
+        return table.size();
     }
 
     /**
@@ -164,6 +543,242 @@ public class RouteCatalogue {
      * @return true if there are no routes, false otherwise
      */
     public boolean isEmpty() {
-        return routes.isEmpty();
+        return table.size() == 0;
+    }
+
+    /**
+     * SearchCriteria resolved to the values stored in the table columns, so that a row
+     * is checked without creating its Route.
+     */
+    private final class RowFilter {
+        private final int departureCode;
+        private final int arrivalCode;
+        private final int dayBit;
+        private final int preferredSecond;
+        private final int trainType;
+        private final TicketClass ticketClass;
+        private final long maxCents;
+        private final boolean matchesNothing;
+
+        RowFilter(SearchCriteria criteria) {
+            Station departure = criteria.getDepartureStation();
+            Station arrival = criteria.getArrivalStation();
+            // Stations are matched by code, as Station.equals does
+            this.departureCode = departure != null ? table.codeId(departure) : -1;
+            this.arrivalCode = arrival != null ? table.codeId(arrival) : -1;
+            this.matchesNothing = (departure != null && departureCode < 0) || (arrival != null && arrivalCode < 0);
+            this.dayBit = criteria.getDepartureDate() != null ?
+                RouteTable.dayBit(criteria.getDepartureDate().getDayOfWeek()) : 0;
+            this.preferredSecond = criteria.getPreferredTime() != null ?
+                criteria.getPreferredTime().toSecondOfDay() : -1;
+            this.trainType = criteria.getPreferredTrainType() != null ?
+                criteria.getPreferredTrainType().ordinal() : -1;
+            // Default to second class if no preference specified
+            this.ticketClass = criteria.getTicketClass() != null ?
+                criteria.getTicketClass() : TicketClass.SECOND_CLASS;
+            this.maxCents = criteria.getMaxPrice() != null ? criteria.getMaxPrice().getMinorUnits() : Long.MAX_VALUE;
+        }
+
+        /**
+         * Checks if a row matches all specified criteria.
+         */
+        boolean matches(int row) {
+            // Match departure and arrival station
+            if (departureCode >= 0 && table.departureCode(row) != departureCode) {
+                return false;
+            }
+            if (arrivalCode >= 0 && table.arrivalCode(row) != arrivalCode) {
+                return false;
+            }
+
+            // Match operating day
+            if (dayBit != 0 && (table.dayMask(row) & dayBit) == 0) {
+                return false;
+            }
+
+            // Match preferred departure time (within 2 hours, across midnight)
+            if (preferredSecond >= 0) {
+                int timeDiff = Math.abs(table.departureMinute(row) * 60 - preferredSecond);
+                timeDiff = Math.min(timeDiff, SECONDS_PER_DAY - timeDiff);
+                if (timeDiff > PREFERRED_TIME_WINDOW_MINUTES * 60) {
+                    return false;
+                }
+            }
+
+            // Match preferred train type
+            if (trainType >= 0 && table.trainTypeOrdinal(row) != trainType) {
+                return false;
+            }
+
+            // Match maximum price (based on ticket class preference)
+            return table.priceCents(row, ticketClass) <= maxCents;
+        }
+    }
+
+    /**
+     * A growable list of row numbers in ascending (catalogue) order.
+     */
+    private static final class RowList {
+        private static final RowList EMPTY = new RowList();
+
+        private int[] rows = new int[8];
+        private int size;
+
+        RowList() {
+        }
+
+        RowList(int[] rows) {
+            this.rows = rows;
+            this.size = rows.length;
+        }
+
+        void add(int row) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+        }
+
+        List<Route> routes(RouteTable table) {
+            return table.routes(rows, size);
+        }
+    }
+
+    /**
+     * The rows of one departure station sorted by departure minute of the day.
+     */
+    private static final class DepartureTimes {
+        private final int[] minutes;
+        private final int[] rows;
+
+        DepartureTimes(RouteTable table, RowList stationRows) {
+            Integer[] order = new Integer[stationRows.size];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = stationRows.rows[i];
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(table.departureMinute(a), table.departureMinute(b)));
+            this.minutes = new int[order.length];
+            this.rows = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                rows[i] = order[i];
+                minutes[i] = table.departureMinute(order[i]);
+            }
+        }
+
+        int size() {
+            return minutes.length;
+        }
+
+        int row(int i) {
+            return rows[i];
+        }
+
+        int minute(int i) {
+            return minutes[i];
+        }
+
+        /**
+         * Binary search for the first departure at or after the given minute.
+         */
+        int firstAtOrAfter(int minute) {
+            int low = 0;
+            int high = minutes.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (minutes[mid] < minute) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Returns [start, end) index pairs of the departures between the two minutes,
+         * inclusive. A window reaching before midnight or past the end of the day wraps
+         * around and is split in two ranges.
+         */
+        int[] rangesWithin(int from, int to) {
+            if (from < 0) {
+                return new int[] {0, firstAtOrAfter(to + 1), firstAtOrAfter(from + Route.MINUTES_PER_DAY), size()};
+            }
+            if (to >= Route.MINUTES_PER_DAY) {
+                return new int[] {firstAtOrAfter(from), size(), 0, firstAtOrAfter(to - Route.MINUTES_PER_DAY + 1)};
+            }
+            return new int[] {firstAtOrAfter(from), firstAtOrAfter(to + 1)};
+        }
+
+        static int count(int[] ranges) {
+            int count = 0;
+            for (int i = 0; i < ranges.length; i += 2) {
+                count += ranges[i + 1] - ranges[i];
+            }
+            return count;
+        }
+
+        /**
+         * Returns the rows in the given ranges, in catalogue order.
+         */
+        RowList rowsIn(int[] ranges) {
+            int[] selected = new int[count(ranges)];
+            int n = 0;
+            for (int r = 0; r < ranges.length; r += 2) {
+                for (int i = ranges[r]; i < ranges[r + 1]; i++) {
+                    selected[n++] = rows[i];
+                }
+            }
+            Arrays.sort(selected);
+            return new RowList(selected);
+        }
+    }
+
+    /**
+     * All rows of the table sorted by their price in one ticket class, in cents.
+     */
+    private static final class PriceIndex {
+        private final long[] cents;
+        private final int[] rows;
+
+        PriceIndex(RouteTable table, TicketClass ticketClass) {
+            Integer[] order = new Integer[table.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(table.priceCents(a, ticketClass),
+                                                         table.priceCents(b, ticketClass)));
+            this.cents = new long[order.length];
+            this.rows = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                rows[i] = order[i];
+                cents[i] = table.priceCents(order[i], ticketClass);
+            }
+        }
+
+        /**
+         * Binary search for the number of rows costing at most the given amount.
+         */
+        int countAtMost(long maxCents) {
+            int low = 0;
+            int high = cents.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (cents[mid] <= maxCents) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Returns the given number of cheapest rows, in catalogue order.
+         */
+        RowList cheapest(int count) {
+            int[] selected = Arrays.copyOf(rows, count);
+            Arrays.sort(selected);
+            return new RowList(selected);
+        }
     }
 }
@@ -0,0 +1,135 @@
+package repository;
+
+import model.StationRegistry;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * RouteSnapshot saves a RouteTable to a binary file and maps it back in, so that a
+ * catalogue can start without parsing its CSV file again.
+ *
+ * The file starts with a header: a magic number, the format version, the size and
+ * modification time of the CSV file the routes came from, the length of the rest of the
+ * file and its CRC32 checksum. The rest is the table as RouteTable.writeTo writes it.
+ * A snapshot is only used when every header field matches and the checksum is right;
+ * otherwise the caller parses the CSV file and may write a new snapshot.
+ */
+final class RouteSnapshot {
+    private static final int MAGIC = 0x52544253; // "RTBS"
+    // Raise whenever the layout, or how the parser turns CSV text into routes, changes
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_BYTES = 2 * Integer.BYTES + 4 * Long.BYTES;
+
+    private RouteSnapshot() {}
+
+    /**
+     * Writes the table to the snapshot file, replacing it only once the new file is
+     * complete.
+     *
+     * @param table the table to save
+     * @param snapshotFile the file to write
+     * @param sourceFile the CSV file the table was loaded from
+     * @throws IOException if the source cannot be read or the snapshot cannot be written
+     */
+    static void write(RouteTable table, Path snapshotFile, Path sourceFile) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(payload)) {
+            table.writeTo(out);
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(payload.toByteArray());
+
+        Path directory = snapshotFile.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, snapshotFile.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream file = Files.newOutputStream(temporary);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(Files.size(sourceFile));
+                out.writeLong(Files.getLastModifiedTime(sourceFile).toMillis());
+                out.writeLong(payload.size());
+                out.writeLong(checksum.getValue());
+                payload.writeTo(out);
+            }
+            try {
+                Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Reads the snapshot if it is valid for the source file. A missing snapshot gives
+     * null; a stale or damaged one gives null and a message on System.err.
+     *
+     * @param snapshotFile the snapshot file
+     * @param sourceFile the CSV file the snapshot must have been taken from
+     * @param registry the registry the stations come from
+     * @return the table, or null if the snapshot cannot be used
+     */
+    static RouteTable read(Path snapshotFile, Path sourceFile, StationRegistry registry) {
+        if (!Files.isRegularFile(snapshotFile)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_BYTES) {
+                return ignore(snapshotFile, "file is too short");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+
+            if (buffer.getInt() != MAGIC) {
+                return ignore(snapshotFile, "not a route snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != FORMAT_VERSION) {
+                return ignore(snapshotFile, "format version " + version + ", expected " + FORMAT_VERSION);
+            }
+            long sourceSize = buffer.getLong();
+            long sourceModified = buffer.getLong();
+            if (sourceSize != Files.size(sourceFile) ||
+                sourceModified != Files.getLastModifiedTime(sourceFile).toMillis()) {
+                return ignore(snapshotFile, sourceFile + " has changed");
+            }
+            long payloadLength = buffer.getLong();
+            long expectedChecksum = buffer.getLong();
+            if (payloadLength != fileSize - HEADER_BYTES) {
+                return ignore(snapshotFile, "file is truncated");
+            }
+
+            ByteBuffer payload = buffer.slice();
+            CRC32 checksum = new CRC32();
+            checksum.update(payload.duplicate());
+            if (checksum.getValue() != expectedChecksum) {
+                return ignore(snapshotFile, "checksum mismatch");
+            }
+            return RouteTable.readFrom(payload, registry);
+        } catch (IOException | RuntimeException e) {
+            return ignore(snapshotFile, e.getMessage());
+        }
+    }
+
+    private static RouteTable ignore(Path snapshotFile, String reason) {
+        System.err.println("Ignoring route snapshot " + snapshotFile + ": " + reason);
+        return null;
+    }
+}
@@ -0,0 +1,669 @@
+package repository;
+
+import model.*;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Stream;
+
+/**
+ * RouteTable stores routes column by column in primitive arrays: one row per route, with
+ * station ids, departure and arrival minutes of the day, the arrival day offset, prices in
+ * cents and a currency id for each class, the DaySet bit mask and the train type ordinal.
+ *
+ * A Route holds two Stations, two LocalTimes, two Money objects and a DaySet, so
+ * filtering a list of routes follows many pointers per route. Filtering a RouteTable reads
+ * a few adjacent array entries instead, and Route objects are only created (and then kept)
+ * for the rows a caller actually asks for. Routes added with append keep the caller's
+ * Route object.
+ *
+ * Stations are stored once per distinct name, city, country and code, and numbered in the
+ * order they are first seen. Since Station.equals compares codes only, stations are also
+ * numbered by code: stations sharing a code share a code id, which is what searches match on.
+ *
+ * The table is the source of truth: times are kept to the minute, and changes made to a
+ * materialized Route afterwards are not seen by the table.
+ *
+ * Any number of threads may read a table at once, including route(int): each row is
+ * materialized at most once, and every reader gets the same Route object for it. append
+ * changes the columns and must not run while other threads read the table.
+ */
+public final class RouteTable {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int size;
+    private String[] routeIds;
+    private int[] departureStations;
+    private int[] arrivalStations;
+    private short[] departureMinutes;
+    private short[] arrivalMinutes;
+    private byte[] arrivalDayOffsets;
+    private int[] firstClassCents;
+    private int[] secondClassCents;
+    private byte[] firstClassCurrencies;
+    private byte[] secondClassCurrencies;
+    private byte[] dayMasks;
+    private byte[] trainTypes;
+    private AtomicReferenceArray<Route> materialized;
+
+    private final List<Station> stations = new ArrayList<>();
+    private final Map<String, Integer> stationIds = new HashMap<>();
+    private final List<String> codes = new ArrayList<>();
+    private final Map<String, Integer> codeIds = new HashMap<>();
+    private int[] stationCodeIds = new int[INITIAL_CAPACITY];
+    private final List<String> currencyNames = new ArrayList<>();
+
+    /**
+     * Creates an empty table.
+     */
+    public RouteTable() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Builds a table from the given routes, for example the output of CSVRouteParser.
+     * The Route objects are not kept.
+     *
+     * @param routes the routes to store
+     * @return a table with one row per route, in list order
+     */
+    public static RouteTable of(List<Route> routes) {
+        RouteTable table = new RouteTable();
+        table.allocate(Math.max(routes.size(), INITIAL_CAPACITY));
+        for (Route route : routes) {
+            table.addRow(route);
+        }
+        return table;
+    }
+
+    /**
+     * Builds a table from routes as they arrive, for example from
+     * CSVRouteParser.streamRoutes. The Route objects are not kept.
+     *
+     * @param routes the routes to store
+     * @return a table with one row per route, in encounter order
+     */
+    public static RouteTable of(Stream<Route> routes) {
+        RouteTable table = new RouteTable();
+        routes.forEachOrdered(table::addRow);
+        return table;
+    }
+
+    /**
+     * Returns a table with the same rows, copied column by column. The copy creates its
+     * own Route objects and is not affected by rows appended to this table later.
+     *
+     * @return a copy of the table
+     */
+    public RouteTable copy() {
+        RouteTable copy = new RouteTable();
+        copy.allocate(Math.max(size, INITIAL_CAPACITY));
+        System.arraycopy(routeIds, 0, copy.routeIds, 0, size);
+        System.arraycopy(departureStations, 0, copy.departureStations, 0, size);
+        System.arraycopy(arrivalStations, 0, copy.arrivalStations, 0, size);
+        System.arraycopy(departureMinutes, 0, copy.departureMinutes, 0, size);
+        System.arraycopy(arrivalMinutes, 0, copy.arrivalMinutes, 0, size);
+        System.arraycopy(arrivalDayOffsets, 0, copy.arrivalDayOffsets, 0, size);
+        System.arraycopy(firstClassCents, 0, copy.firstClassCents, 0, size);
+        System.arraycopy(secondClassCents, 0, copy.secondClassCents, 0, size);
+        System.arraycopy(firstClassCurrencies, 0, copy.firstClassCurrencies, 0, size);
+        System.arraycopy(secondClassCurrencies, 0, copy.secondClassCurrencies, 0, size);
+        System.arraycopy(dayMasks, 0, copy.dayMasks, 0, size);
+        System.arraycopy(trainTypes, 0, copy.trainTypes, 0, size);
+        copy.stations.addAll(stations);
+        copy.stationIds.putAll(stationIds);
+        copy.codes.addAll(codes);
+        copy.codeIds.putAll(codeIds);
+        copy.stationCodeIds = stationCodeIds.clone();
+        copy.currencyNames.addAll(currencyNames);
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Appends a route as a new row. The given Route object is returned for this row.
+     *
+     * @param route the route to append
+     * @return the row number of the route
+     */
+    public int append(Route route) {
+        if (route == null) {
+            throw new IllegalArgumentException("Route cannot be null");
+        }
+        int row = addRow(route);
+        materialized.set(row, route);
+        return row;
+    }
+
+    private int addRow(Route route) {
+        if (size == routeIds.length) {
+            grow(size * 2);
+        }
+        int row = size;
+        routeIds[row] = route.getRouteId();
+        departureStations[row] = internStation(route.getDepartureStation());
+        arrivalStations[row] = internStation(route.getArrivalStation());
+        departureMinutes[row] = (short) route.getDepartureMinuteOfDay();
+        arrivalMinutes[row] = (short) route.getArrivalMinuteOfDay();
+        arrivalDayOffsets[row] = toDayOffset(route);
+        firstClassCents[row] = toCents(route.getPriceFirstClass());
+        secondClassCents[row] = toCents(route.getPriceSecondClass());
+        firstClassCurrencies[row] = internCurrency(route.getPriceFirstClass().getCurrency());
+        secondClassCurrencies[row] = internCurrency(route.getPriceSecondClass().getCurrency());
+        dayMasks[row] = (byte) route.getDayPattern().getDayPattern();
+        trainTypes[row] = (byte) route.getTrainType().ordinal();
+        size++;
+        return row;
+    }
+
+    private void allocate(int capacity) {
+        routeIds = new String[capacity];
+        departureStations = new int[capacity];
+        arrivalStations = new int[capacity];
+        departureMinutes = new short[capacity];
+        arrivalMinutes = new short[capacity];
+        arrivalDayOffsets = new byte[capacity];
+        firstClassCents = new int[capacity];
+        secondClassCents = new int[capacity];
+        firstClassCurrencies = new byte[capacity];
+        secondClassCurrencies = new byte[capacity];
+        dayMasks = new byte[capacity];
+        trainTypes = new byte[capacity];
+        materialized = new AtomicReferenceArray<>(capacity);
+    }
+
+    private void grow(int capacity) {
+        routeIds = Arrays.copyOf(routeIds, capacity);
+        departureStations = Arrays.copyOf(departureStations, capacity);
+        arrivalStations = Arrays.copyOf(arrivalStations, capacity);
+        departureMinutes = Arrays.copyOf(departureMinutes, capacity);
+        arrivalMinutes = Arrays.copyOf(arrivalMinutes, capacity);
+        arrivalDayOffsets = Arrays.copyOf(arrivalDayOffsets, capacity);
+        firstClassCents = Arrays.copyOf(firstClassCents, capacity);
+        secondClassCents = Arrays.copyOf(secondClassCents, capacity);
+        firstClassCurrencies = Arrays.copyOf(firstClassCurrencies, capacity);
+        secondClassCurrencies = Arrays.copyOf(secondClassCurrencies, capacity);
+        dayMasks = Arrays.copyOf(dayMasks, capacity);
+        trainTypes = Arrays.copyOf(trainTypes, capacity);
+        AtomicReferenceArray<Route> grown = new AtomicReferenceArray<>(capacity);
+        for (int row = 0; row < size; row++) {
+            grown.set(row, materialized.get(row));
+        }
+        materialized = grown;
+    }
+
+    private int internStation(Station station) {
+        String key = station.getName() + "#" + station.getCity() + "#" + station.getCountry() + "#" + station.getCode();
+        Integer id = stationIds.get(key);
+        if (id != null) {
+            return id;
+        }
+        int newId = stations.size();
+        stations.add(station);
+        stationIds.put(key, newId);
+
+        Integer codeId = codeIds.get(station.getCode());
+        if (codeId == null) {
+            codeId = codes.size();
+            codes.add(station.getCode());
+            codeIds.put(station.getCode(), codeId);
+        }
+        if (newId == stationCodeIds.length) {
+            stationCodeIds = Arrays.copyOf(stationCodeIds, newId * 2);
+        }
+        stationCodeIds[newId] = codeId;
+        return newId;
+    }
+
+    private byte internCurrency(String currency) {
+        int id = currencyNames.indexOf(currency);
+        if (id < 0) {
+            id = currencyNames.size();
+            currencyNames.add(currency);
+        }
+        return (byte) id;
+    }
+
+    /**
+     * Writes the table for RouteSnapshot: a pool of every string, the currencies, the
+     * train type names, the stations, and then each column in row order. Strings,
+     * currencies and train types are written as indexes, so the reader does not depend
+     * on the order of the TrainType constants.
+     *
+     * @param out the stream to write to
+     * @throws IOException if writing fails
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        Map<String, Integer> pool = new LinkedHashMap<>();
+        for (Station station : stations) {
+            pool.putIfAbsent(station.getName(), pool.size());
+            pool.putIfAbsent(station.getCity(), pool.size());
+            pool.putIfAbsent(station.getCountry(), pool.size());
+            pool.putIfAbsent(station.getCode(), pool.size());
+        }
+        for (String currency : currencyNames) {
+            pool.putIfAbsent(currency, pool.size());
+        }
+        TrainType[] trainTypeValues = TrainType.values();
+        for (TrainType trainType : trainTypeValues) {
+            pool.putIfAbsent(trainType.name(), pool.size());
+        }
+        for (int row = 0; row < size; row++) {
+            pool.putIfAbsent(routeIds[row], pool.size());
+        }
+
+        out.writeInt(pool.size());
+        for (String value : pool.keySet()) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        out.writeInt(currencyNames.size());
+        for (String currency : currencyNames) {
+            out.writeInt(pool.get(currency));
+        }
+        out.writeInt(trainTypeValues.length);
+        for (TrainType trainType : trainTypeValues) {
+            out.writeInt(pool.get(trainType.name()));
+        }
+        out.writeInt(stations.size());
+        for (Station station : stations) {
+            out.writeInt(pool.get(station.getName()));
+            out.writeInt(pool.get(station.getCity()));
+            out.writeInt(pool.get(station.getCountry()));
+            out.writeInt(pool.get(station.getCode()));
+        }
+
+        out.writeInt(size);
+        for (int row = 0; row < size; row++) out.writeInt(pool.get(routeIds[row]));
+        for (int row = 0; row < size; row++) out.writeInt(departureStations[row]);
+        for (int row = 0; row < size; row++) out.writeInt(arrivalStations[row]);
+        for (int row = 0; row < size; row++) out.writeShort(departureMinutes[row]);
+        for (int row = 0; row < size; row++) out.writeShort(arrivalMinutes[row]);
+        out.write(arrivalDayOffsets, 0, size);
+        for (int row = 0; row < size; row++) out.writeInt(firstClassCents[row]);
+        for (int row = 0; row < size; row++) out.writeInt(secondClassCents[row]);
+        out.write(firstClassCurrencies, 0, size);
+        out.write(secondClassCurrencies, 0, size);
+        out.write(dayMasks, 0, size);
+        out.write(trainTypes, 0, size);
+    }
+
+    /**
+     * Reads a table written by writeTo. Stations are taken from the registry, in the
+     * order they were written, and must match the written name, country and code;
+     * otherwise the registry would give these cities other codes than the table holds.
+     * The whole table is checked against a copy of the registry first, so a snapshot that
+     * is rejected adds no stations to the registry.
+     *
+     * @param in the written table, positioned at its start
+     * @param registry the registry the stations come from
+     * @return the table
+     * @throws IOException if the data does not describe a valid table for this registry
+     */
+    static RouteTable readFrom(ByteBuffer in, StationRegistry registry) throws IOException {
+        String[] pool = new String[in.getInt()];
+        for (int i = 0; i < pool.length; i++) {
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            pool[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        RouteTable table = new RouteTable();
+        int currencyCount = in.getInt();
+        for (int i = 0; i < currencyCount; i++) {
+            table.currencyNames.add(pool[in.getInt()]);
+        }
+        byte[] trainTypeOrdinals = new byte[in.getInt()];
+        for (int i = 0; i < trainTypeOrdinals.length; i++) {
+            String name = pool[in.getInt()];
+            try {
+                trainTypeOrdinals[i] = (byte) TrainType.valueOf(name).ordinal();
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Unknown train type " + name);
+            }
+        }
+        // Interning the same cities in the same order gives the same codes, so the copy
+        // tells what the registry would give the snapshot's cities without changing it
+        StationRegistry scratch = new StationRegistry();
+        for (Station station : registry.getAllStations()) {
+            scratch.intern(station.getCity());
+        }
+        String[] cities = new String[in.getInt()];
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < cities.length; i++) {
+            String name = pool[in.getInt()];
+            String city = pool[in.getInt()];
+            String country = pool[in.getInt()];
+            String code = pool[in.getInt()];
+            Station station = scratch.intern(city);
+            if (!station.getName().equals(name) || !station.getCountry().equals(country) ||
+                !station.getCode().equals(code)) {
+                throw new IOException("Station " + city + " has code " + station.getCode() +
+                                      " in the registry but " + code + " in the snapshot");
+            }
+            if (!seen.add(city)) {
+                throw new IOException("Station " + city + " appears twice");
+            }
+            cities[i] = city;
+        }
+        int stationCount = cities.length;
+
+        int rows = in.getInt();
+        table.allocate(Math.max(rows, INITIAL_CAPACITY));
+        for (int row = 0; row < rows; row++) {
+            table.routeIds[row] = pool[in.getInt()];
+        }
+        readInts(in, table.departureStations, rows);
+        readInts(in, table.arrivalStations, rows);
+        in.asShortBuffer().get(table.departureMinutes, 0, rows);
+        in.position(in.position() + rows * Short.BYTES);
+        in.asShortBuffer().get(table.arrivalMinutes, 0, rows);
+        in.position(in.position() + rows * Short.BYTES);
+        in.get(table.arrivalDayOffsets, 0, rows);
+        readInts(in, table.firstClassCents, rows);
+        readInts(in, table.secondClassCents, rows);
+        in.get(table.firstClassCurrencies, 0, rows);
+        in.get(table.secondClassCurrencies, 0, rows);
+        in.get(table.dayMasks, 0, rows);
+        in.get(table.trainTypes, 0, rows);
+
+        for (int row = 0; row < rows; row++) {
+            if (table.departureStations[row] < 0 || table.departureStations[row] >= stationCount ||
+                table.arrivalStations[row] < 0 || table.arrivalStations[row] >= stationCount ||
+                table.firstClassCurrencies[row] < 0 || table.firstClassCurrencies[row] >= currencyCount ||
+                table.secondClassCurrencies[row] < 0 || table.secondClassCurrencies[row] >= currencyCount ||
+                table.trainTypes[row] < 0 || table.trainTypes[row] >= trainTypeOrdinals.length) {
+                throw new IOException("Row " + row + " refers to an unknown station, currency or train type");
+            }
+            table.trainTypes[row] = trainTypeOrdinals[table.trainTypes[row]];
+        }
+
+        for (int i = 0; i < stationCount; i++) {
+            Station station = registry.intern(cities[i]);
+            if (!station.getCode().equals(scratch.findByCity(cities[i]).getCode())) {
+                throw new IOException("Station " + cities[i] + " got another code while the snapshot was read");
+            }
+            table.internStation(station);
+        }
+        table.size = rows;
+        return table;
+    }
+
+    private static void readInts(ByteBuffer in, int[] column, int rows) {
+        in.asIntBuffer().get(column, 0, rows);
+        in.position(in.position() + rows * Integer.BYTES);
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return the number of routes in the table
+     */
+    public int size() {
+        return size;
+    }
+
+    public int departureStation(int row) {
+        return departureStations[checkRow(row)];
+    }
+
+    public int arrivalStation(int row) {
+        return arrivalStations[checkRow(row)];
+    }
+
+    /**
+     * Returns the code id of the departure station, see codeId(Station).
+     *
+     * @param row the row number
+     * @return the code id of the departure station
+     */
+    public int departureCode(int row) {
+        return stationCodeIds[departureStations[checkRow(row)]];
+    }
+
+    /**
+     * Returns the code id of the arrival station, see codeId(Station).
+     *
+     * @param row the row number
+     * @return the code id of the arrival station
+     */
+    public int arrivalCode(int row) {
+        return stationCodeIds[arrivalStations[checkRow(row)]];
+    }
+
+    public int departureMinute(int row) {
+        return departureMinutes[checkRow(row)];
+    }
+
+    public int arrivalMinute(int row) {
+        return arrivalMinutes[checkRow(row)];
+    }
+
+    public int arrivalDayOffset(int row) {
+        return arrivalDayOffsets[checkRow(row)];
+    }
+
+    public int firstClassCents(int row) {
+        return firstClassCents[checkRow(row)];
+    }
+
+    public int secondClassCents(int row) {
+        return secondClassCents[checkRow(row)];
+    }
+
+    /**
+     * Returns the currency of the first-class price of a row as a small id, numbered in
+     * the order the currencies were first stored. Rows priced in the same currency have
+     * the same id.
+     *
+     * @param row the row number
+     * @return the currency id
+     */
+    public int firstClassCurrency(int row) {
+        return firstClassCurrencies[checkRow(row)];
+    }
+
+    /**
+     * Returns the currency of the second-class price of a row as a small id, see
+     * firstClassCurrency.
+     *
+     * @param row the row number
+     * @return the currency id
+     */
+    public int secondClassCurrency(int row) {
+        return secondClassCurrencies[checkRow(row)];
+    }
+
+    /**
+     * Returns the price of a row in cents for the given ticket class.
+     *
+     * @param row the row number
+     * @param ticketClass the ticket class
+     * @return the price in cents
+     */
+    public int priceCents(int row, TicketClass ticketClass) {
+        return ticketClass == TicketClass.FIRST_CLASS ? firstClassCents(row) : secondClassCents(row);
+    }
+
+    /**
+     * Returns the DaySet bit mask of a row (bit 0 is Monday).
+     *
+     * @param row the row number
+     * @return the operating days as a bit mask
+     */
+    public int dayMask(int row) {
+        return dayMasks[checkRow(row)];
+    }
+
+    public boolean operatesOn(int row, DayOfWeek dayOfWeek) {
+        return (dayMasks[checkRow(row)] & dayBit(dayOfWeek)) != 0;
+    }
+
+    public TrainType trainType(int row) {
+        return TrainType.values()[trainTypes[checkRow(row)]];
+    }
+
+    /**
+     * Returns the train type ordinal of a row, for comparisons without an enum lookup.
+     *
+     * @param row the row number
+     * @return the TrainType ordinal
+     */
+    public int trainTypeOrdinal(int row) {
+        return trainTypes[checkRow(row)];
+    }
+
+    /**
+     * Returns the Route of a row, creating it on first use.
+     *
+     * @param row the row number
+     * @return the route stored in this row
+     */
+    public Route route(int row) {
+        checkRow(row);
+        Route route = materialized.get(row);
+        if (route == null) {
+            // Two readers may both build the row; only the first one's Route is kept
+            Route created = materialize(row);
+            route = materialized.compareAndSet(row, null, created) ? created : materialized.get(row);
+        }
+        return route;
+    }
+
+    private Route materialize(int row) {
+        return new Route(routeIds[row],
+                         stations.get(departureStations[row]),
+                         stations.get(arrivalStations[row]),
+                         toTime(departureMinutes[row]),
+                         toTime(arrivalMinutes[row]),
+                         arrivalDayOffsets[row],
+                         TrainType.values()[trainTypes[row]],
+                         Money.ofMinorUnits(firstClassCents[row], currencyNames.get(firstClassCurrencies[row])),
+                         Money.ofMinorUnits(secondClassCents[row], currencyNames.get(secondClassCurrencies[row])),
+                         new DaySet(dayMasks[row]));
+    }
+
+    /**
+     * Returns an unmodifiable list of the routes in the given rows. Routes are created
+     * as the list is read.
+     *
+     * @param rows the row numbers
+     * @param count how many entries of rows to use
+     * @return a list view over those rows
+     */
+    public List<Route> routes(int[] rows, int count) {
+        return new RowView(rows, count);
+    }
+
+    /**
+     * Returns an unmodifiable list of every route in row order. Routes are created as
+     * the list is read.
+     *
+     * @return a list view over all rows
+     */
+    public List<Route> routes() {
+        return new RowView(null, size);
+    }
+
+    public Station station(int stationId) {
+        return stations.get(stationId);
+    }
+
+    public int stationCount() {
+        return stations.size();
+    }
+
+    /**
+     * Returns the code id shared by all stations with the same code as the given station,
+     * or -1 if no row uses that code.
+     *
+     * @param station the station
+     * @return the code id, or -1
+     */
+    public int codeId(Station station) {
+        Integer id = codeIds.get(station.getCode());
+        return id != null ? id : -1;
+    }
+
+    public int codeCount() {
+        return codes.size();
+    }
+
+    /**
+     * Returns the bit of a day in the DaySet mask.
+     *
+     * @param dayOfWeek the day
+     * @return the mask bit for that day
+     */
+    public static int dayBit(DayOfWeek dayOfWeek) {
+        return 1 << (dayOfWeek.getValue() - 1);
+    }
+
+    private int checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of range for " + size + " routes");
+        }
+        return row;
+    }
+
+    private static LocalTime toTime(int minuteOfDay) {
+        return LocalTime.of(minuteOfDay / 60, minuteOfDay % 60);
+    }
+
+    private static byte toDayOffset(Route route) {
+        if (route.getArrivalDayOffset() > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Arrival day offset too large for the route table: " + route);
+        }
+        return (byte) route.getArrivalDayOffset();
+    }
+
+    private static int toCents(Money money) {
+        try {
+            return Math.toIntExact(money.getMinorUnits());
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Price too large for the route table: " + money, e);
+        }
+    }
+
+    /**
+     * Read-only list of routes over a set of rows, or over all rows when rows is null.
+     */
+    private final class RowView extends AbstractList<Route> implements RandomAccess {
+        private final int[] rows;
+        private final int count;
+
+        RowView(int[] rows, int count) {
+            this.rows = rows;
+            this.count = count;
+        }
+
+        @Override
+        public Route get(int index) {
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of range for " + count + " routes");
+            }
+            return route(rows != null ? rows[index] : index);
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package repository;
+
+import model.*;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * StationIndex is a lookup index over the stations served by a set of routes.
+ *
+ * Stations are deduplicated by code (the same key Station.equals uses), keeping the first
+ * station seen for each code. Codes are looked up in a hash map. Names and cities are
+ * normalized and stored in a sorted array together with every suffix that starts a word
+ * ("a coruña" is also stored as "coruña"), so all stations whose name, city or one of
+ * their words starts with a prefix form one contiguous range found by binary search.
+ *
+ * Matches are ranked:
+ * <ol>
+ *   <li>the station whose code equals the input,</li>
+ *   <li>stations whose name or city equals the input,</li>
+ *   <li>stations whose name or city starts with the input,</li>
+ *   <li>stations with a later word starting with the input,</li>
+ * </ol>
+ * and alphabetically by name within a rank.
+ *
+ * Names are folded before they are indexed or compared: accents are removed and letters
+ * such as "ł" or "ß" are spelled out, so "coruna" finds "A Coruña". For misspelled input,
+ * findSimilar scores stations by the trigrams (three-letter pieces) they share with the
+ * input, using an inverted index from trigram to station names so that only names sharing
+ * at least one trigram are looked at. German umlauts are indexed both folded ("dusseldorf")
+ * and spelled out ("duesseldorf").
+ */
+public class StationIndex {
+    private static final int RANK_CODE = 0;
+    private static final int RANK_EXACT = 1;
+    private static final int RANK_PREFIX = 2;
+    private static final int RANK_WORD_PREFIX = 3;
+
+    /**
+     * Default minimum similarity (0 to 1) for findSimilar.
+     */
+    public static final double DEFAULT_MIN_SIMILARITY = 0.35;
+
+    private final Map<String, Station> stationsByCode;
+    private final List<Station> stations;
+    // Sorted lowercase keys; keyStations[i] and wordStart[i] describe keys[i]
+    private final String[] keys;
+    private final Station[] keyStations;
+    private final boolean[] wordStart;
+    // Fuzzy keys: fuzzyStations[k] owns a name with fuzzyTrigramCounts[k] distinct trigrams
+    private final Map<String, int[]> trigramPostings;
+    private final Station[] fuzzyStations;
+    private final int[] fuzzyTrigramCounts;
+
+    /**
+     * Builds the index over the routes currently in the catalogue.
+     *
+     * @param catalogue the route catalogue
+     */
+    public StationIndex(RouteCatalogue catalogue) {
+        this(stationsOf(catalogue.getRouteTable()));
+    }
+
+    /**
+     * Builds the index over the departure and arrival stations of the given routes.
+     *
+     * @param routes the routes whose stations are indexed
+     */
+    public StationIndex(List<Route> routes) {
+        this(stationsOf(routes));
+    }
+
+    private static Map<String, Station> stationsOf(List<Route> routes) {
+        if (routes == null) {
+            throw new IllegalArgumentException("Routes cannot be null");
+        }
+        Map<String, Station> byCode = new LinkedHashMap<>();
+        for (Route route : routes) {
+            byCode.putIfAbsent(normalize(route.getDepartureStation().getCode()), route.getDepartureStation());
+            byCode.putIfAbsent(normalize(route.getArrivalStation().getCode()), route.getArrivalStation());
+        }
+        return byCode;
+    }
+
+    // Same order as stationsOf(List), read from the station columns of the table
+    private static Map<String, Station> stationsOf(RouteTable table) {
+        Map<String, Station> byCode = new LinkedHashMap<>();
+        for (int row = 0; row < table.size(); row++) {
+            Station departure = table.station(table.departureStation(row));
+            Station arrival = table.station(table.arrivalStation(row));
+            byCode.putIfAbsent(normalize(departure.getCode()), departure);
+            byCode.putIfAbsent(normalize(arrival.getCode()), arrival);
+        }
+        return byCode;
+    }
+
+    private StationIndex(Map<String, Station> byCode) {
+        this.stationsByCode = new HashMap<>(byCode);
+        this.stations = List.copyOf(byCode.values());
+
+        List<KeyEntry> entries = new ArrayList<>();
+        for (Station station : stations) {
+            Set<String> stationKeys = new LinkedHashSet<>();
+            stationKeys.add(normalize(station.getName()));
+            stationKeys.add(normalize(station.getCity()));
+            for (String key : stationKeys) {
+                entries.add(new KeyEntry(key, station, false));
+                for (int i = 1; i < key.length(); i++) {
+                    if (key.charAt(i - 1) == ' ' || key.charAt(i - 1) == '-') {
+                        entries.add(new KeyEntry(key.substring(i), station, true));
+                    }
+                }
+            }
+        }
+        entries.sort((a, b) -> a.key.compareTo(b.key));
+
+        this.keys = new String[entries.size()];
+        this.keyStations = new Station[entries.size()];
+        this.wordStart = new boolean[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            keys[i] = entries.get(i).key;
+            keyStations[i] = entries.get(i).station;
+            wordStart[i] = entries.get(i).wordStart;
+        }
+
+        List<Station> fuzzyOwners = new ArrayList<>();
+        List<Integer> fuzzyCounts = new ArrayList<>();
+        Map<String, List<Integer>> postings = new HashMap<>();
+        for (Station station : stations) {
+            Set<String> variants = new LinkedHashSet<>();
+            for (String text : new String[] {station.getName(), station.getCity()}) {
+                variants.add(normalize(text));
+                variants.add(normalize(spellOutUmlauts(text)));
+            }
+            for (String variant : variants) {
+                Set<String> trigrams = trigrams(variant);
+                int key = fuzzyOwners.size();
+                fuzzyOwners.add(station);
+                fuzzyCounts.add(trigrams.size());
+                for (String trigram : trigrams) {
+                    postings.computeIfAbsent(trigram, t -> new ArrayList<>()).add(key);
+                }
+            }
+        }
+        this.fuzzyStations = fuzzyOwners.toArray(new Station[0]);
+        this.fuzzyTrigramCounts = fuzzyCounts.stream().mapToInt(Integer::intValue).toArray();
+        this.trigramPostings = new HashMap<>();
+        for (Map.Entry<String, List<Integer>> entry : postings.entrySet()) {
+            trigramPostings.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    /**
+     * Looks up a station by its code, ignoring case.
+     *
+     * @param code the station code
+     * @return the station, or null if no station has this code
+     */
+    public Station findByCode(String code) {
+        if (code == null) {
+            return null;
+        }
+        return stationsByCode.get(normalize(code));
+    }
+
+    /**
+     * Finds every station whose code equals the input or whose name, city or one of their
+     * words starts with it, ignoring case.
+     *
+     * @param input the code or the beginning of a station name or city
+     * @return the matching stations, best match first; empty if the input is blank
+     */
+    public List<Station> findByPrefix(String input) {
+        if (input == null || input.isBlank()) {
+            return new ArrayList<>();
+        }
+        String prefix = normalize(input);
+        Map<Station, Integer> ranks = new HashMap<>();
+
+        Station byCode = stationsByCode.get(prefix);
+        if (byCode != null) {
+            ranks.put(byCode, RANK_CODE);
+        }
+        for (int i = lowerBound(prefix); i < keys.length && keys[i].startsWith(prefix); i++) {
+            int rank = wordStart[i] ? RANK_WORD_PREFIX :
+                       keys[i].length() == prefix.length() ? RANK_EXACT : RANK_PREFIX;
+            ranks.merge(keyStations[i], rank, Math::min);
+        }
+
+        List<Station> matches = new ArrayList<>(ranks.keySet());
+        matches.sort((a, b) -> {
+            int byRank = Integer.compare(ranks.get(a), ranks.get(b));
+            return byRank != 0 ? byRank : a.getName().compareToIgnoreCase(b.getName());
+        });
+        return matches;
+    }
+
+    /**
+     * Finds every station whose name or city contains the input anywhere, ignoring case.
+     * This scans all stations and is meant as a fallback when findByPrefix finds nothing.
+     *
+     * @param input part of a station name or city
+     * @return the matching stations, in index order
+     */
+    public List<Station> findContaining(String input) {
+        List<Station> matches = new ArrayList<>();
+        if (input == null || input.isBlank()) {
+            return matches;
+        }
+        String fragment = normalize(input);
+        for (Station station : stations) {
+            if (normalize(station.getName()).contains(fragment) ||
+                normalize(station.getCity()).contains(fragment)) {
+                matches.add(station);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Finds stations whose name or city is similar to the input, tolerating typos,
+     * missing accents and spelled-out umlauts, with DEFAULT_MIN_SIMILARITY.
+     *
+     * @param input the station name as typed
+     * @param limit the maximum number of stations to return
+     * @return the most similar stations, best match first
+     */
+    public List<Station> findSimilar(String input, int limit) {
+        return findSimilar(input, limit, DEFAULT_MIN_SIMILARITY);
+    }
+
+    /**
+     * Finds stations whose name or city is similar to the input. Similarity is the Dice
+     * coefficient of the trigram sets, 2 * shared / (input trigrams + name trigrams),
+     * taking the best of a station's names.
+     *
+     * @param input the station name as typed
+     * @param limit the maximum number of stations to return
+     * @param minSimilarity the lowest similarity (0 to 1) a station needs to be returned
+     * @return the most similar stations, best match first (then alphabetically)
+     */
+    public List<Station> findSimilar(String input, int limit, double minSimilarity) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be at least 1");
+        }
+        if (input == null || input.isBlank()) {
+            return new ArrayList<>();
+        }
+        Set<String> queryTrigrams = trigrams(normalize(input));
+        int[] shared = new int[fuzzyStations.length];
+        for (String trigram : queryTrigrams) {
+            int[] keys = trigramPostings.get(trigram);
+            if (keys != null) {
+                for (int key : keys) {
+                    shared[key]++;
+                }
+            }
+        }
+
+        Map<Station, Double> scores = new HashMap<>();
+        for (int key = 0; key < shared.length; key++) {
+            if (shared[key] == 0) {
+                continue;
+            }
+            double score = 2.0 * shared[key] / (queryTrigrams.size() + fuzzyTrigramCounts[key]);
+            if (score >= minSimilarity) {
+                scores.merge(fuzzyStations[key], score, Math::max);
+            }
+        }
+
+        List<Station> matches = new ArrayList<>(scores.keySet());
+        matches.sort((a, b) -> {
+            int byScore = Double.compare(scores.get(b), scores.get(a));
+            return byScore != 0 ? byScore : a.getName().compareToIgnoreCase(b.getName());
+        });
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    /**
+     * Returns every indexed station, one per code, in the order they were first seen.
+     *
+     * @return an unmodifiable list of the stations
+     */
+    public List<Station> getAllStations() {
+        return stations;
+    }
+
+    /**
+     * Returns the number of distinct stations.
+     *
+     * @return the number of stations
+     */
+    public int size() {
+        return stations.size();
+    }
+
+    private int lowerBound(String prefix) {
+        int index = Arrays.binarySearch(keys, prefix);
+        if (index < 0) {
+            return -index - 1;
+        }
+        // Step back to the first of several equal keys
+        while (index > 0 && keys[index - 1].equals(prefix)) {
+            index--;
+        }
+        return index;
+    }
+
+    /**
+     * Lowercases the text and removes accents, e.g. "Łódź" becomes "lodz".
+     */
+    private static String normalize(String text) {
+        String lower = text.trim().toLowerCase(Locale.ROOT)
+            .replace("ł", "l").replace("ø", "o").replace("đ", "d")
+            .replace("æ", "ae").replace("œ", "oe").replace("ß", "ss");
+        return Normalizer.normalize(lower, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+    }
+
+    private static String spellOutUmlauts(String text) {
+        return text.replace("ä", "ae").replace("ö", "oe").replace("ü", "ue")
+                   .replace("Ä", "Ae").replace("Ö", "Oe").replace("Ü", "Ue");
+    }
+
+    /**
+     * Returns the distinct trigrams of a normalized name, padded so that the start of
+     * the name counts more than its middle ("  m", " mu", "mun", ..., "ch ").
+     */
+    private static Set<String> trigrams(String text) {
+        String padded = "  " + text + " ";
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    private static final class KeyEntry {
+        private final String key;
+        private final Station station;
+        private final boolean wordStart;
+
+        KeyEntry(String key, Station station, boolean wordStart) {
+            this.key = key;
+            this.station = station;
+            this.wordStart = wordStart;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package service;
+
+import model.*;
+import repository.RouteCatalogue;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CachedConnectionSearch memoizes ConnectionSearchEngine results per origin, destination
+ * and day of the week.
+ *
+ * Whether a route runs on a date only depends on its DaySet, so the connections between
+ * two stations are the same for every Tuesday. Results are cached under
+ * "originCode#destinationCode#DAY" in a size-bounded map that evicts the least recently
+ * used entry.
+ *
+ * The engine and the cache belong to one version of the RouteCatalogue. When the catalogue
+ * version changes (loadRoutesFromCSV, addRoute or clearRoutes), the next query builds a new
+ * engine and an empty cache and swaps both in at once, so a result computed from old data
+ * is never returned. The same happens when the LayoverPolicy rules are reconfigured.
+ *
+ * SearchService keeps one CachedConnectionSearch per catalogue snapshot and runs its
+ * connection searches through it.
+ */
+public class CachedConnectionSearch {
+    /**
+     * Default maximum number of cached results, across all station pairs and weekdays.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+    private final RouteCatalogue catalogue;
+    private final int maxEntries;
+    private volatile Generation generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a cache holding up to DEFAULT_MAX_ENTRIES results.
+     *
+     * @param catalogue the catalogue to search
+     */
+    public CachedConnectionSearch(RouteCatalogue catalogue) {
+        this(catalogue, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Creates a cache holding up to maxEntries results.
+     *
+     * @param catalogue the catalogue to search
+     * @param maxEntries the maximum number of cached results
+     */
+    public CachedConnectionSearch(RouteCatalogue catalogue, int maxEntries) {
+        if (catalogue == null) {
+            throw new IllegalArgumentException("Route catalogue cannot be null");
+        }
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Cache size must be at least 1");
+        }
+        this.catalogue = catalogue;
+        this.maxEntries = maxEntries;
+        this.generation = new Generation(catalogue.getVersion(), LayoverPolicy.getTransferWindows());
+    }
+
+    /**
+     * Finds the same connections as ConnectionSearchEngine.findConnections, reusing the
+     * result of an earlier query for the same stations and day of the week.
+     *
+     * @param origin the departure station
+     * @param destination the arrival station
+     * @param travelDate the date of travel
+     * @return an unmodifiable list of the matching connections, shortest total duration first
+     */
+    public List<Connection> findConnections(Station origin, Station destination, LocalDate travelDate) {
+        Generation current = currentGeneration();
+        String key = cacheKey(origin, destination, travelDate.getDayOfWeek());
+
+        List<Connection> cached = current.get(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        List<Connection> connections = List.copyOf(current.engine.findConnections(origin, destination, travelDate));
+        current.put(key, connections);
+        return connections;
+    }
+
+    /**
+     * Like findConnections(Station, Station, LocalDate), but a search that is not cached
+     * stops at the deadline, see ConnectionSearchEngine. Only complete results are cached;
+     * a timed-out one is returned without being stored.
+     *
+     * @param origin the departure station
+     * @param destination the arrival station
+     * @param travelDate the date of travel
+     * @param deadlineNanos the System.nanoTime() value at which to stop
+     * @return all matching connections, or those found before the deadline
+     */
+    SearchResult findConnections(Station origin, Station destination, LocalDate travelDate, long deadlineNanos) {
+        Generation current = currentGeneration();
+        String key = cacheKey(origin, destination, travelDate.getDayOfWeek());
+
+        List<Connection> cached = current.get(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return new SearchResult(cached, false);
+        }
+        misses.incrementAndGet();
+        SearchResult result = current.engine.findConnections(origin, destination, travelDate, deadlineNanos);
+        if (!result.isTimedOut()) {
+            current.put(key, result.getConnections());
+        }
+        return result;
+    }
+
+    private Generation currentGeneration() {
+        Generation current = generation;
+        if (current.isStale()) {
+            synchronized (this) {
+                current = generation;
+                if (current.isStale()) {
+                    current = new Generation(catalogue.getVersion(), LayoverPolicy.getTransferWindows());
+                    generation = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static String cacheKey(Station origin, Station destination, DayOfWeek dayOfWeek) {
+        return origin.getCode() + "#" + destination.getCode() + "#" + dayOfWeek;
+    }
+
+    /**
+     * Drops every cached result. Counters are kept.
+     */
+    public synchronized void invalidate() {
+        generation = new Generation(catalogue.getVersion(), LayoverPolicy.getTransferWindows());
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the number of results currently cached.
+     *
+     * @return the cache size
+     */
+    public int getSize() {
+        return generation.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    @Override
+    public String toString() {
+        return "CachedConnectionSearch{size=" + getSize() + "/" + maxEntries +
+               ", hits=" + getHitCount() + ", misses=" + getMissCount() +
+               ", evictions=" + getEvictionCount() + "}";
+    }
+
+    /**
+     * The search engine and cached results built from one version of the catalogue,
+     * under one set of layover rules.
+     */
+    private final class Generation {
+        private final long version;
+        private final TransferWindows windows;
+        private final ConnectionSearchEngine engine;
+        private final Map<String, List<Connection>> results;
+
+        Generation(long version, TransferWindows windows) {
+            this.version = version;
+            this.windows = windows;
+            this.engine = new ConnectionSearchEngine(catalogue);
+            // Access-ordered, so the eldest entry is the least recently used one
+            this.results = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, List<Connection>> eldest) {
+                    if (size() > maxEntries) {
+                        evictions.incrementAndGet();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        boolean isStale() {
+            return version != catalogue.getVersion() || windows != LayoverPolicy.getTransferWindows();
+        }
+
+        synchronized List<Connection> get(String key) {
+            return results.get(key);
+        }
+
+        synchronized void put(String key, List<Connection> connections) {
+            results.put(key, connections);
+        }
+
+        synchronized int size() {
+            return results.size();
+        }
+    }
+}
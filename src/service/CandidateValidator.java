@@ -0,0 +1,89 @@
+package service;
+
+import model.*;
+
+/**
+ * CandidateValidator checks a candidate connection given as the trips of its legs in a
+ * DepartureIndex, with the same rules as Connection: every class must be priced in one
+ * currency across the legs, and every layover must satisfy LayoverPolicy. It also computes
+ * the totals Connection would compute. Layovers are measured between the trips, so a leg
+ * on a later day than the travel date is checked against the arrival it really follows.
+ *
+ * All checks read the primitive columns of the index and allocate nothing, so searches
+ * can reject candidates, and rank the ones they keep, before creating a Connection.
+ */
+final class CandidateValidator {
+    /**
+     * Returned by totalDurationMinutes for a candidate that is not a valid connection.
+     */
+    static final int REJECTED = -1;
+
+    private CandidateValidator() {}
+
+    /**
+     * Returns the total duration of the legs as Connection.getTotalDurationMinutes computes
+     * it, or REJECTED if new Connection(...) would fail on mixed currencies or
+     * respectsLayoverPolicy() would return false.
+     *
+     * @param index the index the leg trips refer to
+     * @param legs the trips of the legs, in travel order
+     * @param legCount how many entries of legs to use
+     * @param windows the layover rules to check against
+     * @return the total duration in minutes, or REJECTED
+     */
+    static int totalDurationMinutes(DepartureIndex index, int[] legs, int legCount, TransferWindows windows) {
+        int first = index.tripRouteIndex(legs[0]);
+        int minutes = index.durationMinutes(first);
+        for (int i = 1; i < legCount; i++) {
+            int leg = index.tripRouteIndex(legs[i]);
+            if (index.firstClassCurrency(leg) != index.firstClassCurrency(first) ||
+                index.secondClassCurrency(leg) != index.secondClassCurrency(first)) {
+                return REJECTED;
+            }
+
+            int layover = index.tripDepartureMinute(legs[i]) - index.tripArrivalMinute(legs[i - 1]);
+            if (!windows.isAcceptable(layover, index.arrivalMinute(index.tripRouteIndex(legs[i - 1])))) {
+                return REJECTED;
+            }
+            // Connection counts a zero-minute layover as a full day in the total duration
+            minutes += (layover == 0 ? Route.MINUTES_PER_DAY : layover) + index.durationMinutes(leg);
+        }
+        return minutes;
+    }
+
+    /**
+     * Checks whether nextTrip may follow trip in a connection as far as its prices go.
+     * Since every class must be priced in one currency across all legs, a search that
+     * only follows transfers passing this check never builds a mixed-currency connection.
+     *
+     * @param index the index the trips refer to
+     * @param trip the trip arriving at the transfer station
+     * @param nextTrip the trip departing from it
+     * @return true if both trips price each class in the same currency
+     */
+    static boolean sameCurrencies(DepartureIndex index, int trip, int nextTrip) {
+        int leg = index.tripRouteIndex(trip);
+        int nextLeg = index.tripRouteIndex(nextTrip);
+        return index.firstClassCurrency(leg) == index.firstClassCurrency(nextLeg) &&
+               index.secondClassCurrency(leg) == index.secondClassCurrency(nextLeg);
+    }
+
+    /**
+     * Returns the total price of the legs in cents for one ticket class.
+     *
+     * @param index the index the leg trips refer to
+     * @param legs the trips of the legs
+     * @param legCount how many entries of legs to use
+     * @param ticketClass the ticket class
+     * @return the sum of the leg prices in cents
+     */
+    static long totalCents(DepartureIndex index, int[] legs, int legCount, TicketClass ticketClass) {
+        long cents = 0;
+        for (int i = 0; i < legCount; i++) {
+            int leg = index.tripRouteIndex(legs[i]);
+            cents += ticketClass == TicketClass.FIRST_CLASS ?
+                index.firstClassCents(leg) : index.secondClassCents(leg);
+        }
+        return cents;
+    }
+}
@@ -0,0 +1,257 @@
+package service;
+
+import model.*;
+import repository.RouteCatalogue;
+import service.DepartureIndex.StationDepartures;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ConnectionScanSearch answers "arrive as early as possible" queries with the
+ * Connection Scan Algorithm (CSA).
+ *
+ * For every day of the week the routes operating on that day are flattened into one
+ * timeline of departure and arrival events sorted by time, followed by the routes of the
+ * next days (up to ConnectionSearchEngine.MAX_TRIP_DAYS) for overnight connections. The
+ * routes of each day are taken from that day's DepartureIndex partition. A query sweeps
+ * that timeline once: a route becomes reachable when it leaves the origin, or when it
+ * leaves a station that a reachable route arrived at within an acceptable layover
+ * (LayoverPolicy) and prices its classes in the same currencies. The first reachable
+ * arrival at the destination is the earliest arrival, so the sweep stops there and the
+ * winning Connection is rebuilt from the recorded predecessors once CandidateValidator
+ * has accepted it.
+ *
+ * The cost is linear in the number of routes regardless of how many transfers the
+ * best connection needs.
+ */
+public class ConnectionScanSearch {
+    private static final int ARRIVAL = 0;
+    private static final int DEPARTURE = 1;
+
+    private final DepartureIndex index;
+    private final long[][] eventsByDay;
+
+    /**
+     * Builds the per-weekday event timelines over the given routes.
+     *
+     * @param routes the routes to search
+     */
+    public ConnectionScanSearch(List<Route> routes) {
+        this(new DepartureIndex(routes));
+    }
+
+    /**
+     * Builds the per-weekday event timelines over the route table of a catalogue.
+     *
+     * @param catalogue the route catalogue to search
+     */
+    public ConnectionScanSearch(RouteCatalogue catalogue) {
+        this(new DepartureIndex(catalogue.getRouteTable()));
+    }
+
+    private ConnectionScanSearch(DepartureIndex index) {
+        this.index = index;
+        this.eventsByDay = new long[DayOfWeek.values().length][];
+        for (DayOfWeek day : DayOfWeek.values()) {
+            eventsByDay[day.ordinal()] = buildTimeline(day);
+        }
+    }
+
+    /**
+     * Encodes the departure and arrival of every trip as (minute, event type, trip),
+     * sorted so that arrivals come before departures at the same minute. Trips are those
+     * of DepartureIndex: the routes operating on the given day, then those operating on
+     * each following day with minutes shifted by that many days, so that overnight
+     * arrivals can connect to early departures.
+     */
+    private long[] buildTimeline(DayOfWeek day) {
+        long[] timeline = new long[16];
+        int size = 0;
+        for (int dayOffset = 0; dayOffset < ConnectionSearchEngine.MAX_TRIP_DAYS; dayOffset++) {
+            for (int code = 0; code < index.codeCount(); code++) {
+                StationDepartures departures = index.departuresFrom(code, day.plus(dayOffset));
+                if (departures == null) {
+                    continue;
+                }
+                if (size + 2 * departures.size() > timeline.length) {
+                    timeline = Arrays.copyOf(timeline, Math.max(timeline.length * 2, size + 2 * departures.size()));
+                }
+                for (int i = 0; i < departures.size(); i++) {
+                    int trip = dayOffset * index.size() + departures.routeIndex(i);
+                    timeline[size++] = encode(index.tripDepartureMinute(trip), DEPARTURE, trip);
+                    timeline[size++] = encode(index.tripArrivalMinute(trip), ARRIVAL, trip);
+                }
+            }
+        }
+        timeline = Arrays.copyOf(timeline, size);
+        Arrays.sort(timeline);
+        return timeline;
+    }
+
+    /**
+     * Finds the connection that reaches the destination earliest on the travel date.
+     *
+     * @param origin the departure station
+     * @param destination the arrival station
+     * @param travelDate the date of travel
+     * @return the earliest-arriving connection, or null if the destination cannot be reached
+     */
+    public Connection findEarliestArrival(Station origin, Station destination, LocalDate travelDate) {
+        return findEarliestArrival(origin, destination, travelDate, LocalTime.MIDNIGHT);
+    }
+
+    /**
+     * Finds the connection that reaches the destination earliest on the travel date,
+     * leaving the origin no earlier than the given time.
+     *
+     * @param origin the departure station
+     * @param destination the arrival station
+     * @param travelDate the date of travel
+     * @param earliestDeparture the earliest acceptable departure from the origin
+     * @return the earliest-arriving connection, or null if the destination cannot be reached
+     */
+    public Connection findEarliestArrival(Station origin, Station destination, LocalDate travelDate,
+                                          LocalTime earliestDeparture) {
+        if (origin == null || destination == null || travelDate == null || origin.equals(destination)) {
+            return null;
+        }
+        int originCode = index.codeId(origin);
+        int destinationCode = index.codeId(destination);
+        if (originCode < 0 || destinationCode < 0) {
+            return null;
+        }
+
+        long[] timeline = eventsByDay[travelDate.getDayOfWeek().ordinal()];
+        int startMinute = minuteOfDay(earliestDeparture);
+
+        // legCount[t] == 0 means trip t has not been reached
+        int[] legCount = new int[index.tripCount()];
+        int[] previous = new int[index.tripCount()];
+        ArrivalLog[] arrivalsByStation = new ArrivalLog[index.codeCount()];
+        TransferWindows windows = LayoverPolicy.getTransferWindows();
+
+        for (long event : timeline) {
+            int minute = minute(event);
+            int trip = trip(event);
+            int routeIndex = index.tripRouteIndex(trip);
+
+            if (type(event) == DEPARTURE) {
+                int station = index.departureCode(routeIndex);
+                if (station == originCode && minute >= startMinute && minute < Route.MINUTES_PER_DAY) {
+                    legCount[trip] = 1;
+                    previous[trip] = -1;
+                    continue;
+                }
+                ArrivalLog log = arrivalsByStation[station];
+                int feeder = log == null ? -1 : log.bestFeeder(trip, minute, legCount, windows);
+                if (feeder >= 0) {
+                    legCount[trip] = legCount[feeder] + 1;
+                    previous[trip] = feeder;
+                }
+            } else if (legCount[trip] > 0) {
+                int station = index.arrivalCode(routeIndex);
+                if (station == destinationCode) {
+                    int[] legs = DepartureIndex.tripsEndingWith(trip, previous);
+                    if (CandidateValidator.totalDurationMinutes(index, legs, legs.length, windows)
+                            != CandidateValidator.REJECTED) {
+                        return buildConnection(legs);
+                    }
+                    continue;
+                }
+                if (arrivalsByStation[station] == null) {
+                    arrivalsByStation[station] = new ArrivalLog();
+                }
+                arrivalsByStation[station].add(minute, trip);
+            }
+        }
+        return null;
+    }
+
+    private Connection buildConnection(int[] legs) {
+        List<Route> routes = new ArrayList<>(legs.length);
+        for (int leg : legs) {
+            routes.add(index.tripRoute(leg));
+        }
+        return new Connection(routes);
+    }
+
+    private static long encode(int minute, int type, int trip) {
+        return ((long) (minute * 2 + type) << 32) | trip;
+    }
+
+    private static int minute(long event) {
+        return (int) (event >>> 33);
+    }
+
+    private static int type(long event) {
+        return (int) (event >>> 32) & 1;
+    }
+
+    private static int trip(long event) {
+        return (int) event;
+    }
+
+    private static int minuteOfDay(LocalTime time) {
+        return time.getHour() * 60 + time.getMinute();
+    }
+
+    /**
+     * Reached arrivals at one station, appended in increasing arrival minute
+     * because the timeline is swept in time order.
+     */
+    private final class ArrivalLog {
+        private int[] minutes = new int[4];
+        private int[] trips = new int[4];
+        private int size;
+
+        void add(int minute, int trip) {
+            if (size == minutes.length) {
+                minutes = Arrays.copyOf(minutes, size * 2);
+                trips = Arrays.copyOf(trips, size * 2);
+            }
+            minutes[size] = minute;
+            trips[size] = trip;
+            size++;
+        }
+
+        /**
+         * Returns the reached trip with the fewest legs whose arrival allows an acceptable
+         * layover before the given trip departs at departureMinute, and whose prices are
+         * in the same currencies, or -1 if none.
+         */
+        int bestFeeder(int trip, int departureMinute, int[] legCount, TransferWindows windows) {
+            int best = -1;
+            for (int i = firstArrivingAtOrAfter(departureMinute - windows.getLongestLayoverMinutes()); i < size; i++) {
+                if (minutes[i] > departureMinute) {
+                    break;
+                }
+                int feeder = trips[i];
+                if (windows.isAcceptable(departureMinute - minutes[i], minutes[i] % Route.MINUTES_PER_DAY) &&
+                    CandidateValidator.sameCurrencies(index, feeder, trip) &&
+                    (best < 0 || legCount[feeder] < legCount[best])) {
+                    best = feeder;
+                }
+            }
+            return best;
+        }
+
+        private int firstArrivingAtOrAfter(int minute) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (minutes[mid] < minute) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
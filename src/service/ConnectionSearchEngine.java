@@ -0,0 +1,486 @@
+package service;
+
+import model.*;
+import repository.RouteCatalogue;
+import service.DepartureIndex.StationDepartures;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * ConnectionSearchEngine finds direct, 1-stop and 2-stop connections between two stations.
+ *
+ * There is one index partition per day of the week, built over the routes operating on
+ * that day (see DepartureIndex). In each, routes are grouped by departure station and the
+ * outgoing routes of every station are kept sorted by departure time. Expanding a leg
+ * therefore only touches the routes that run on its day and leave the current stop inside
+ * the window allowed by LayoverPolicy, instead of scanning the whole route list for every leg.
+ *
+ * Times are counted in minutes from midnight of the travel date, so a leg after an
+ * overnight route, or after a layover past midnight, departs on the next day and is read
+ * from the next weekday's partition. Like RaptorSearch, legs are trips of DepartureIndex:
+ * the first leg runs on the travel date, and every later leg on the day the previous one
+ * arrives or after, up to MAX_TRIP_DAYS days from the travel date.
+ *
+ * Results are the same as enumerating every route combination: connections are sorted
+ * by total duration, and ties keep the order of the legs in the original route list.
+ * For "show me the K best" queries, findTopConnections keeps only the K best results and
+ * stops expanding partial connections that can no longer make it into them.
+ */
+public class ConnectionSearchEngine {
+    /**
+     * Maximum number of legs in a connection (direct, 1-stop and 2-stop).
+     */
+    public static final int MAX_LEGS = 3;
+
+    /**
+     * Longest connection followed, in calendar days: every leg departs on the travel date
+     * or one of the MAX_TRIP_DAYS - 1 days after it, so a connection with overnight legs
+     * may arrive several days after the travel date.
+     */
+    public static final int MAX_TRIP_DAYS = 4;
+
+    private static final int DEADLINE_CHECK_INTERVAL = 256;
+
+    // Result order for each sort key and its reverse, built once instead of per query
+    private static final Map<SortKey, Comparator<Candidate>> ORDERS = new EnumMap<>(SortKey.class);
+    private static final Map<SortKey, Comparator<Candidate>> REVERSED_ORDERS = new EnumMap<>(SortKey.class);
+
+    static {
+        for (SortKey sortKey : SortKey.values()) {
+            Comparator<Candidate> order = orderFor(sortKey).thenComparing(Candidate.ORDER);
+            ORDERS.put(sortKey, order);
+            REVERSED_ORDERS.put(sortKey, order.reversed());
+        }
+    }
+
+    private final DepartureIndex index;
+
+    /**
+     * Builds the station index over the given routes.
+     *
+     * @param routes the routes to search, in catalogue order
+     */
+    public ConnectionSearchEngine(List<Route> routes) {
+        this.index = new DepartureIndex(routes);
+    }
+
+    /**
+     * Builds the station index over the route table of a catalogue, without creating
+     * a Route object per route.
+     *
+     * @param catalogue the route catalogue to search
+     */
+    public ConnectionSearchEngine(RouteCatalogue catalogue) {
+        this.index = new DepartureIndex(catalogue.getRouteTable());
+    }
+
+    /**
+     * Finds all connections with up to MAX_LEGS legs from origin to destination
+     * that operate on the travel date and respect the layover policy.
+     *
+     * @param origin the departure station
+     * @param destination the arrival station
+     * @param travelDate the date of travel
+     * @return the matching connections, shortest total duration first
+     */
+    public List<Connection> findConnections(Station origin, Station destination, LocalDate travelDate) {
+        Query query = new Query(origin, destination, travelDate, null, Integer.MAX_VALUE);
+        run(query);
+        return query.results(Candidate.ORDER);
+    }
+
+    /**
+     * Finds the best connections for the given sort key, without building the full result list.
+     *
+     * The result is the same as the first {@code limit} connections of findConnections sorted
+     * by the key, ties kept in findConnections order. DEPARTURE_TIME and ARRIVAL_TIME compare
+     * minutes from midnight of the travel date, so overnight arrivals sort after same-day ones;
+     * DEPARTURE_STATION, ARRIVAL_STATION and TRAIN_TYPE use the first (or last) leg.
+     *
+     * @param origin the departure station
+     * @param destination the arrival station
+     * @param travelDate the date of travel
+     * @param sortKey the ordering of the results
+     * @param limit the maximum number of connections to return
+     * @return at most limit connections, best first
+     */
+    public List<Connection> findTopConnections(Station origin, Station destination, LocalDate travelDate,
+                                               SortKey sortKey, int limit) {
+        if (sortKey == null) {
+            throw new IllegalArgumentException("Sort key cannot be null");
+        }
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be at least 1");
+        }
+        Query query = new Query(origin, destination, travelDate, sortKey, limit);
+        run(query);
+        return query.results(query.order);
+    }
+
+    /**
+     * Finds the same connections as findConnections, but stops expanding when the deadline
+     * passes or the calling thread is interrupted. The connections found until then are
+     * returned, in findConnections order, in a result marked as timed out.
+     *
+     * @param origin the departure station
+     * @param destination the arrival station
+     * @param travelDate the date of travel
+     * @param deadlineNanos the System.nanoTime() value at which to stop
+     * @return all matching connections, or those found before the deadline
+     */
+    SearchResult findConnections(Station origin, Station destination, LocalDate travelDate, long deadlineNanos) {
+        Query query = new Query(origin, destination, travelDate, null, Integer.MAX_VALUE);
+        query.stopAt(deadlineNanos);
+        run(query);
+        return new SearchResult(query.results(Candidate.ORDER), query.stopped);
+    }
+
+    private void run(Query query) {
+        for (int trip : firstLegs(query.origin, query.travelDay)) {
+            extend(trip, 0, query);
+        }
+    }
+
+    /**
+     * Returns the routes leaving the origin on the travel date, i.e. the possible first
+     * legs of a connection, as trips of the index.
+     */
+    int[] firstLegs(Station origin, LocalDate travelDate) {
+        return firstLegs(origin, travelDate.getDayOfWeek());
+    }
+
+    private int[] firstLegs(Station origin, DayOfWeek travelDay) {
+        StationDepartures fromOrigin = index.departuresFrom(origin, travelDay);
+        if (fromOrigin == null) {
+            return new int[0];
+        }
+        // Trips of the travel date are numbered like their routes
+        int[] legs = new int[fromOrigin.size()];
+        for (int i = 0; i < legs.length; i++) {
+            legs[i] = fromOrigin.routeIndex(i);
+        }
+        return legs;
+    }
+
+    /**
+     * Enumerates the connections whose first leg is one of firstLegs[from..to).
+     * Each call has its own search state, so disjoint ranges can run on different threads.
+     */
+    List<Candidate> collect(int[] firstLegs, int from, int to,
+                            Station origin, Station destination, LocalDate travelDate) {
+        Query query = new Query(origin, destination, travelDate, null, Integer.MAX_VALUE);
+        for (int i = from; i < to; i++) {
+            extend(firstLegs[i], 0, query);
+        }
+        return query.candidates;
+    }
+
+    /**
+     * Like collect, but stops expanding when the deadline passes or the calling thread is
+     * interrupted, and then sets the stopped flag.
+     */
+    List<Candidate> collect(int[] firstLegs, int from, int to, Station origin, Station destination,
+                            LocalDate travelDate, long deadlineNanos, AtomicBoolean stopped) {
+        Query query = new Query(origin, destination, travelDate, null, Integer.MAX_VALUE);
+        query.stopAt(deadlineNanos);
+        for (int i = from; i < to; i++) {
+            extend(firstLegs[i], 0, query);
+        }
+        if (query.stopped) {
+            stopped.set(true);
+        }
+        return query.candidates;
+    }
+
+    /**
+     * Sorts candidates in findConnections order and returns their connections.
+     */
+    static List<Connection> toConnections(List<Candidate> candidates) {
+        candidates.sort(Candidate.ORDER);
+        List<Connection> connections = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates) {
+            connections.add(candidate.toConnection());
+        }
+        return connections;
+    }
+
+    /**
+     * Adds the trip as leg number depth and either records the connection (when it
+     * reaches the destination) or expands the next leg from its arrival station.
+     */
+    private void extend(int trip, int depth, Query query) {
+        if (query.shouldStop()) {
+            return;
+        }
+        query.push(trip, depth);
+        if (query.isPruned(depth)) {
+            return;
+        }
+
+        int stop = index.tripArrivalCode(trip);
+        if (stop == query.destinationCode) {
+            query.collect(depth);
+            return;
+        }
+        // Intermediate stops after the first transfer may not loop back to the origin
+        if (depth + 1 >= MAX_LEGS || (depth >= 1 && stop == query.originCode)) {
+            return;
+        }
+
+        // Same window as DepartureIndex.forEachTransfer, without a lambda per expansion.
+        // The next leg leaves on the day this one arrives, or later after a night layover.
+        int arrival = index.tripArrivalMinute(trip);
+        int earliest = query.windows.earliestDeparture(arrival);
+        int latest = query.windows.latestDeparture(arrival);
+        for (int day = arrival / Route.MINUTES_PER_DAY; day < MAX_TRIP_DAYS; day++) {
+            int offset = day * Route.MINUTES_PER_DAY;
+            if (latest < offset) {
+                break;
+            }
+            if (earliest >= offset + Route.MINUTES_PER_DAY) {
+                continue;
+            }
+            StationDepartures next = index.departuresFrom(stop, query.travelDay.plus(day));
+            if (next == null) {
+                continue;
+            }
+            for (int i = next.firstDepartingAtOrAfter(earliest - offset); i < next.size(); i++) {
+                if (next.departureMinute(i) + offset > latest) {
+                    break;
+                }
+                extend(day * index.size() + next.routeIndex(i), depth + 1, query);
+            }
+        }
+    }
+
+    /**
+     * State of one search: the legs of the partial connection being expanded with their
+     * running totals, and either every valid connection found or the best ones so far.
+     */
+    private final class Query {
+        private final Station origin;
+        private final int originCode;
+        private final int destinationCode;
+        private final DayOfWeek travelDay;
+        private final TransferWindows windows = LayoverPolicy.getTransferWindows();
+        private final SortKey sortKey;
+        private final int limit;
+        private final Comparator<Candidate> order;
+
+        private final int[] legs = new int[MAX_LEGS];
+        // Running totals up to and including leg i; durations ignore the day wrap
+        // Connection adds for zero-minute layovers, so they never exceed the final value
+        private final int[] elapsedMinutes = new int[MAX_LEGS];
+        private final long[] firstCents = new long[MAX_LEGS];
+        private final long[] secondCents = new long[MAX_LEGS];
+
+        private final List<Candidate> candidates = new ArrayList<>();
+
+        private boolean hasDeadline;
+        private long deadlineNanos;
+        private int expansions;
+        private boolean stopped;
+        private final PriorityQueue<Candidate> best;
+
+        Query(Station origin, Station destination, LocalDate travelDate, SortKey sortKey, int limit) {
+            this.origin = origin;
+            this.originCode = index.codeId(origin);
+            this.destinationCode = index.codeId(destination);
+            this.travelDay = travelDate.getDayOfWeek();
+            this.sortKey = sortKey;
+            this.limit = limit;
+            this.order = sortKey == null ? Candidate.ORDER : ORDERS.get(sortKey);
+            // Worst of the kept candidates at the head, so it can be evicted
+            this.best = sortKey == null ? null : new PriorityQueue<>(REVERSED_ORDERS.get(sortKey));
+        }
+
+        void stopAt(long deadlineNanos) {
+            this.hasDeadline = true;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Checks the deadline and the interrupt flag every DEADLINE_CHECK_INTERVAL expansions,
+         * so that the clock is not read for every leg.
+         */
+        boolean shouldStop() {
+            if (!stopped && hasDeadline && expansions++ % DEADLINE_CHECK_INTERVAL == 0) {
+                stopped = System.nanoTime() - deadlineNanos >= 0 || Thread.currentThread().isInterrupted();
+            }
+            return stopped;
+        }
+
+        void push(int trip, int depth) {
+            legs[depth] = trip;
+            int routeIndex = index.tripRouteIndex(trip);
+            if (depth == 0) {
+                elapsedMinutes[0] = index.durationMinutes(routeIndex);
+                firstCents[0] = index.firstClassCents(routeIndex);
+                secondCents[0] = index.secondClassCents(routeIndex);
+            } else {
+                int layover = index.tripDepartureMinute(trip) - index.tripArrivalMinute(legs[depth - 1]);
+                elapsedMinutes[depth] = elapsedMinutes[depth - 1] + layover + index.durationMinutes(routeIndex);
+                firstCents[depth] = firstCents[depth - 1] + index.firstClassCents(routeIndex);
+                secondCents[depth] = secondCents[depth - 1] + index.secondClassCents(routeIndex);
+            }
+        }
+
+        /**
+         * A partial connection is pruned when K results are already kept and even the
+         * lower bound of its sort key is worse than the K-th one.
+         */
+        boolean isPruned(int depth) {
+            if (best == null || best.size() < limit || !isNumeric(sortKey)) {
+                return false;
+            }
+            return lowerBound(depth) > best.peek().key;
+        }
+
+        private long lowerBound(int depth) {
+            switch (sortKey) {
+                case DURATION:
+                    return elapsedMinutes[depth];
+                case PRICE_FIRST_CLASS:
+                    return firstCents[depth];
+                case PRICE_SECOND_CLASS:
+                    return secondCents[depth];
+                case DEPARTURE_TIME:
+                    return firstDepartureMinute();
+                case ARRIVAL_TIME:
+                    return firstDepartureMinute() + elapsedMinutes[depth];
+                default:
+                    return Long.MIN_VALUE;
+            }
+        }
+
+        private int firstDepartureMinute() {
+            return index.tripDepartureMinute(legs[0]);
+        }
+
+        /**
+         * Validates the legs on the index columns and keeps them as a candidate. Invalid
+         * combinations (legs priced in different currencies, layovers outside the policy)
+         * and candidates that cannot beat the K-th best are dropped without allocating.
+         */
+        void collect(int depth) {
+            int legCount = depth + 1;
+            int durationMinutes = CandidateValidator.totalDurationMinutes(index, legs, legCount, windows);
+            if (durationMinutes == CandidateValidator.REJECTED) {
+                return;
+            }
+            long key = key(legCount, durationMinutes);
+            if (best != null && best.size() >= limit && isNumeric(sortKey) && key > best.peek().key) {
+                return;
+            }
+
+            Candidate candidate = new Candidate(index, Arrays.copyOf(legs, legCount), durationMinutes, key);
+            if (best == null) {
+                candidates.add(candidate);
+                return;
+            }
+            best.offer(candidate);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+
+        private long key(int legCount, int durationMinutes) {
+            if (sortKey == null) {
+                return 0;
+            }
+            switch (sortKey) {
+                case DURATION:
+                    return durationMinutes;
+                case ARRIVAL_TIME:
+                    return firstDepartureMinute() + durationMinutes;
+                case DEPARTURE_TIME:
+                    return firstDepartureMinute();
+                case PRICE_FIRST_CLASS:
+                    return CandidateValidator.totalCents(index, legs, legCount, TicketClass.FIRST_CLASS);
+                case PRICE_SECOND_CLASS:
+                    return CandidateValidator.totalCents(index, legs, legCount, TicketClass.SECOND_CLASS);
+                default:
+                    return 0;
+            }
+        }
+
+        List<Connection> results(Comparator<Candidate> resultOrder) {
+            List<Candidate> found = best == null ? candidates : new ArrayList<>(best);
+            found.sort(resultOrder);
+            List<Connection> connections = new ArrayList<>(found.size());
+            for (Candidate candidate : found) {
+                connections.add(candidate.toConnection());
+            }
+            return connections;
+        }
+    }
+
+    private static boolean isNumeric(SortKey sortKey) {
+        return sortKey != SortKey.DEPARTURE_STATION &&
+               sortKey != SortKey.ARRIVAL_STATION &&
+               sortKey != SortKey.TRAIN_TYPE;
+    }
+
+    private static Comparator<Candidate> orderFor(SortKey sortKey) {
+        switch (sortKey) {
+            case DEPARTURE_STATION:
+                return Comparator.comparing(c -> firstLeg(c).getDepartureStation().getName());
+            case ARRIVAL_STATION:
+                return Comparator.comparing(c -> lastLeg(c).getArrivalStation().getName());
+            case TRAIN_TYPE:
+                return Comparator.comparing(c -> firstLeg(c).getTrainType());
+            default:
+                return Comparator.comparingLong(c -> c.key);
+        }
+    }
+
+    private static Route firstLeg(Candidate candidate) {
+        return candidate.index.tripRoute(candidate.legs[0]);
+    }
+
+    private static Route lastLeg(Candidate candidate) {
+        return candidate.index.tripRoute(candidate.legs[candidate.legs.length - 1]);
+    }
+
+    /**
+     * A validated connection as the trips of its legs, with its total duration and sort
+     * key. Trips on the travel date are numbered like the catalogue positions of their
+     * routes and next-day trips after them, so results order like a full nested-loop
+     * enumeration; the Connection itself is only created for the results returned.
+     */
+    static final class Candidate {
+        static final Comparator<Candidate> ORDER = Comparator
+            .comparingInt((Candidate c) -> c.durationMinutes)
+            .thenComparingInt(c -> c.legs.length)
+            .thenComparing(c -> c.legs, Arrays::compare);
+
+        private final DepartureIndex index;
+        private final int[] legs;
+        private final int durationMinutes;
+        private final long key;
+
+        Candidate(DepartureIndex index, int[] legs, int durationMinutes, long key) {
+            this.index = index;
+            this.legs = legs;
+            this.durationMinutes = durationMinutes;
+            this.key = key;
+        }
+
+        Connection toConnection() {
+            List<Route> routes = new ArrayList<>(legs.length);
+            for (int leg : legs) {
+                routes.add(index.tripRoute(leg));
+            }
+            return new Connection(routes);
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package service;
+
+import model.*;
+import repository.RouteTable;
+
+import java.time.DayOfWeek;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * DepartureIndex groups the rows of a RouteTable by departure station and keeps every
+ * group sorted by departure minute of the day, so the search engines in this package can
+ * find the next departures from a stop with a binary search.
+ *
+ * There is one such partition per day of the week, holding only the routes whose DaySet
+ * includes that day. A search reads the partition of the day a leg runs on (the travel
+ * date, or the day after for a leg after an overnight arrival) and never looks at routes
+ * that do not run that day.
+ *
+ * Routes are referred to by their row in the table, and stations by their code id (see
+ * RouteTable.codeId). The columns the searches read are copied into int arrays when the
+ * index is built, so a search only creates Route objects for the connections it returns.
+ * Searches that let overnight routes connect to the next morning work on trips, i.e. a
+ * route on the travel date or on one of the days after it, up to
+ * ConnectionSearchEngine.MAX_TRIP_DAYS days in all.
+ */
+final class DepartureIndex {
+    private final RouteTable table;
+    private final int size;
+    // Indexed by day of week ordinal, then by departure code id
+    private final StationDepartures[][] departuresByDay;
+    private final long[] firstClassCents;
+    private final long[] secondClassCents;
+    // Currency of each price as a small id, see RouteTable.firstClassCurrency
+    private final int[] firstClassCurrencies;
+    private final int[] secondClassCurrencies;
+    private final int[] departureCodes;
+    private final int[] arrivalCodes;
+    private final int[] departureMinutes;
+    private final int[] arrivalMinutes;
+    private final int[] durationMinutes;
+
+    /**
+     * Builds the index over the given routes. The Route objects are kept, so connections
+     * are made of the same objects.
+     *
+     * @param routes the routes to search, in catalogue order
+     */
+    DepartureIndex(List<Route> routes) {
+        this(tableOf(routes));
+    }
+
+    private static RouteTable tableOf(List<Route> routes) {
+        RouteTable table = new RouteTable();
+        for (Route route : routes) {
+            table.append(route);
+        }
+        return table;
+    }
+
+    /**
+     * Builds the index over the rows the table has now.
+     *
+     * @param table the routes to search
+     */
+    DepartureIndex(RouteTable table) {
+        this.table = table;
+        this.size = table.size();
+        this.firstClassCents = new long[size];
+        this.secondClassCents = new long[size];
+        this.firstClassCurrencies = new int[size];
+        this.secondClassCurrencies = new int[size];
+        this.departureCodes = new int[size];
+        this.arrivalCodes = new int[size];
+        this.departureMinutes = new int[size];
+        this.arrivalMinutes = new int[size];
+        this.durationMinutes = new int[size];
+        byte[] dayMasks = new byte[size];
+        for (int row = 0; row < size; row++) {
+            firstClassCents[row] = table.firstClassCents(row);
+            secondClassCents[row] = table.secondClassCents(row);
+            firstClassCurrencies[row] = table.firstClassCurrency(row);
+            secondClassCurrencies[row] = table.secondClassCurrency(row);
+            dayMasks[row] = (byte) table.dayMask(row);
+            departureCodes[row] = table.departureCode(row);
+            arrivalCodes[row] = table.arrivalCode(row);
+            departureMinutes[row] = table.departureMinute(row);
+            arrivalMinutes[row] = table.arrivalMinute(row);
+            durationMinutes[row] = table.arrivalDayOffset(row) * Route.MINUTES_PER_DAY +
+                                   arrivalMinutes[row] - departureMinutes[row];
+        }
+        this.departuresByDay = new StationDepartures[DayOfWeek.values().length][];
+        for (DayOfWeek day : DayOfWeek.values()) {
+            departuresByDay[day.ordinal()] = buildIndex(departureCodes, departureMinutes, dayMasks,
+                                                        RouteTable.dayBit(day), table.codeCount());
+        }
+    }
+
+    private static StationDepartures[] buildIndex(int[] departureCodes, int[] departureMinutes, byte[] dayMasks,
+                                                  int dayBit, int codeCount) {
+        int[] counts = new int[codeCount];
+        for (int row = 0; row < departureCodes.length; row++) {
+            if ((dayMasks[row] & dayBit) != 0) {
+                counts[departureCodes[row]]++;
+            }
+        }
+        int[][] rowsByCode = new int[codeCount][];
+        for (int code = 0; code < codeCount; code++) {
+            rowsByCode[code] = new int[counts[code]];
+        }
+        Arrays.fill(counts, 0);
+        for (int row = 0; row < departureCodes.length; row++) {
+            if ((dayMasks[row] & dayBit) != 0) {
+                int code = departureCodes[row];
+                rowsByCode[code][counts[code]++] = row;
+            }
+        }
+
+        StationDepartures[] index = new StationDepartures[codeCount];
+        for (int code = 0; code < codeCount; code++) {
+            if (rowsByCode[code].length > 0) {
+                index[code] = StationDepartures.sorted(rowsByCode[code], departureMinutes);
+            }
+        }
+        return index;
+    }
+
+    Route route(int routeIndex) {
+        return table.route(routeIndex);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Number of station code ids; every code id is below it.
+     */
+    int codeCount() {
+        return departuresByDay[0].length;
+    }
+
+    /**
+     * Returns the code id of a station, or -1 if no route of the index uses its code.
+     */
+    int codeId(Station station) {
+        return table.codeId(station);
+    }
+
+    long firstClassCents(int routeIndex) {
+        return firstClassCents[routeIndex];
+    }
+
+    long secondClassCents(int routeIndex) {
+        return secondClassCents[routeIndex];
+    }
+
+    int firstClassCurrency(int routeIndex) {
+        return firstClassCurrencies[routeIndex];
+    }
+
+    int secondClassCurrency(int routeIndex) {
+        return secondClassCurrencies[routeIndex];
+    }
+
+    int departureCode(int routeIndex) {
+        return departureCodes[routeIndex];
+    }
+
+    int arrivalCode(int routeIndex) {
+        return arrivalCodes[routeIndex];
+    }
+
+    int departureMinute(int routeIndex) {
+        return departureMinutes[routeIndex];
+    }
+
+    int arrivalMinute(int routeIndex) {
+        return arrivalMinutes[routeIndex];
+    }
+
+    int durationMinutes(int routeIndex) {
+        return durationMinutes[routeIndex];
+    }
+
+    /**
+     * Number of trips: every route on each of the MAX_TRIP_DAYS days from the travel date.
+     * Trip t is route t % size() on day t / size() after the travel date.
+     */
+    int tripCount() {
+        return ConnectionSearchEngine.MAX_TRIP_DAYS * size;
+    }
+
+    Route tripRoute(int trip) {
+        return route(tripRouteIndex(trip));
+    }
+
+    /**
+     * Position of the route of a trip, for the per-route columns.
+     */
+    int tripRouteIndex(int trip) {
+        return trip % size;
+    }
+
+    int tripArrivalCode(int trip) {
+        return arrivalCodes[tripRouteIndex(trip)];
+    }
+
+    /**
+     * Departure of a trip in minutes from midnight of the travel date.
+     */
+    int tripDepartureMinute(int trip) {
+        return (trip / size) * Route.MINUTES_PER_DAY + departureMinutes[tripRouteIndex(trip)];
+    }
+
+    /**
+     * Arrival of a trip in minutes from midnight of the travel date.
+     */
+    int tripArrivalMinute(int trip) {
+        return tripDepartureMinute(trip) + durationMinutes[tripRouteIndex(trip)];
+    }
+
+    /**
+     * Calls the action for every trip that can be boarded after arriving with the given
+     * trip, i.e. that leaves its arrival station within the LayoverPolicy window, operates
+     * on its service day and departs no later than latestDeparture. Each day's departures
+     * are read from the partition of that day of the week.
+     *
+     * @param trip the trip arriving at the transfer station
+     * @param latestDeparture latest departure to consider, in minutes from the travel date
+     * @param travelDay day of week of the travel date
+     * @param windows the layover rules of the search
+     * @param action receives the boardable trips in departure order per day
+     */
+    void forEachTransfer(int trip, int latestDeparture, DayOfWeek travelDay, TransferWindows windows,
+                         IntConsumer action) {
+        int stop = tripArrivalCode(trip);
+        int arrival = tripArrivalMinute(trip);
+        int earliest = windows.earliestDeparture(arrival);
+        int latest = Math.min(windows.latestDeparture(arrival), latestDeparture);
+
+        for (int day = arrival / Route.MINUTES_PER_DAY; day < ConnectionSearchEngine.MAX_TRIP_DAYS; day++) {
+            int offset = day * Route.MINUTES_PER_DAY;
+            if (latest < offset) {
+                break;
+            }
+            if (earliest >= offset + Route.MINUTES_PER_DAY) {
+                continue;
+            }
+            StationDepartures departures = departuresFrom(stop, travelDay.plus(day));
+            if (departures == null) {
+                continue;
+            }
+            for (int i = departures.firstDepartingAtOrAfter(earliest - offset); i < departures.size(); i++) {
+                if (departures.departureMinute(i) + offset > latest) {
+                    break;
+                }
+                action.accept(day * size + departures.routeIndex(i));
+            }
+        }
+    }
+
+    /**
+     * Follows a chain of predecessors, as recorded by the round-based and scanning
+     * searches, back from lastTrip.
+     *
+     * @param lastTrip the trip arriving at the destination
+     * @param previous the trip each trip was reached from, -1 for a first leg
+     * @return the trips of the connection, in travel order
+     */
+    static int[] tripsEndingWith(int lastTrip, int[] previous) {
+        int count = 0;
+        for (int t = lastTrip; t >= 0; t = previous[t]) {
+            count++;
+        }
+        int[] trips = new int[count];
+        for (int t = lastTrip; t >= 0; t = previous[t]) {
+            trips[--count] = t;
+        }
+        return trips;
+    }
+
+    /**
+     * Returns the departures from the given station on a day of the week, or null if no
+     * route leaves it that day.
+     */
+    StationDepartures departuresFrom(Station station, DayOfWeek dayOfWeek) {
+        return departuresFrom(codeId(station), dayOfWeek);
+    }
+
+    /**
+     * Returns the departures from the stations with the given code id on a day of the
+     * week, or null if no route leaves them that day.
+     */
+    StationDepartures departuresFrom(int codeId, DayOfWeek dayOfWeek) {
+        StationDepartures[] partition = departuresByDay[dayOfWeek.ordinal()];
+        return codeId >= 0 && codeId < partition.length ? partition[codeId] : null;
+    }
+
+    /**
+     * Outgoing routes of one station, sorted by departure minute of the day.
+     */
+    static final class StationDepartures {
+        private final int[] routeIndices;
+        private final int[] departureMinutes;
+
+        StationDepartures(int[] routeIndices, int[] departureMinutes) {
+            this.routeIndices = routeIndices;
+            this.departureMinutes = departureMinutes;
+        }
+
+        /**
+         * Sorts rows (given in catalogue order) by departure minute; rows leaving at the
+         * same minute keep catalogue order.
+         */
+        static StationDepartures sorted(int[] rows, int[] departureMinuteByRow) {
+            long[] keys = new long[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                keys[i] = ((long) departureMinuteByRow[rows[i]] << 32) | rows[i];
+            }
+            Arrays.sort(keys);
+            int[] routeIndices = new int[rows.length];
+            int[] minutes = new int[rows.length];
+            for (int i = 0; i < keys.length; i++) {
+                routeIndices[i] = (int) keys[i];
+                minutes[i] = (int) (keys[i] >>> 32);
+            }
+            return new StationDepartures(routeIndices, minutes);
+        }
+
+        int size() {
+            return routeIndices.length;
+        }
+
+        int routeIndex(int i) {
+            return routeIndices[i];
+        }
+
+        int departureMinute(int i) {
+            return departureMinutes[i];
+        }
+
+        /**
+         * Binary search for the first departure at or after the given minute.
+         */
+        int firstDepartingAtOrAfter(int minute) {
+            int low = 0;
+            int high = departureMinutes.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (departureMinutes[mid] < minute) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package service;
+
+import model.*;
+import service.ConnectionSearchEngine.Candidate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * ParallelConnectionSearch runs the ConnectionSearchEngine enumeration on a ForkJoinPool.
+ *
+ * Work is partitioned by the first leg out of the origin: every first-leg route roots an
+ * independent subtree of 1-stop and 2-stop continuations, so the range of first legs is
+ * split in halves until each task expands a single subtree. The results of all tasks are
+ * merged and sorted exactly like ConnectionSearchEngine.findConnections.
+ *
+ * Origins with fewer first legs than the threshold are searched on the caller thread,
+ * where forking would cost more than it saves.
+ *
+ * With a deadline, every task stops expanding when it passes and the connections found
+ * by all tasks until then are returned in a timed-out result. The pool is either created
+ * by the search and shut down by close(), or shared and left to its owner.
+ */
+public class ParallelConnectionSearch implements AutoCloseable {
+    /**
+     * Default minimum number of first legs before a search is forked.
+     */
+    public static final int DEFAULT_THRESHOLD = 8;
+
+    private final ConnectionSearchEngine engine;
+    private final ForkJoinPool pool;
+    private final int threshold;
+    private final boolean ownsPool;
+
+    /**
+     * Creates a parallel search using one worker per available processor.
+     *
+     * @param engine the engine whose index is searched
+     */
+    public ParallelConnectionSearch(ConnectionSearchEngine engine) {
+        this(engine, Runtime.getRuntime().availableProcessors(), DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Creates a parallel search with its own ForkJoinPool.
+     *
+     * @param engine the engine whose index is searched
+     * @param parallelism the number of worker threads
+     * @param threshold minimum number of first legs before a search is forked
+     */
+    public ParallelConnectionSearch(ConnectionSearchEngine engine, int parallelism, int threshold) {
+        if (engine == null) {
+            throw new IllegalArgumentException("Search engine cannot be null");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Threshold must be at least 1");
+        }
+        this.engine = engine;
+        this.pool = new ForkJoinPool(parallelism);
+        this.threshold = threshold;
+        this.ownsPool = true;
+    }
+
+    /**
+     * Creates a parallel search that runs on a pool owned by the caller; close() leaves
+     * that pool running.
+     *
+     * @param engine the engine whose index is searched
+     * @param pool the pool to run the tasks on
+     * @param threshold minimum number of first legs before a search is forked
+     */
+    public ParallelConnectionSearch(ConnectionSearchEngine engine, ForkJoinPool pool, int threshold) {
+        if (engine == null) {
+            throw new IllegalArgumentException("Search engine cannot be null");
+        }
+        if (pool == null) {
+            throw new IllegalArgumentException("Fork/join pool cannot be null");
+        }
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Threshold must be at least 1");
+        }
+        this.engine = engine;
+        this.pool = pool;
+        this.threshold = threshold;
+        this.ownsPool = false;
+    }
+
+    /**
+     * Finds the same connections as ConnectionSearchEngine.findConnections, in the same order.
+     *
+     * @param origin the departure station
+     * @param destination the arrival station
+     * @param travelDate the date of travel
+     * @return the matching connections, shortest total duration first
+     */
+    public List<Connection> findConnections(Station origin, Station destination, LocalDate travelDate) {
+        int[] firstLegs = engine.firstLegs(origin, travelDate);
+        if (firstLegs.length < threshold) {
+            return engine.findConnections(origin, destination, travelDate);
+        }
+        List<Candidate> candidates = pool.invoke(
+            new FirstLegTask(firstLegs, 0, firstLegs.length, origin, destination, travelDate, null, 0L));
+        return ConnectionSearchEngine.toConnections(candidates);
+    }
+
+    /**
+     * Finds the same connections as findConnections, but every task stops expanding when
+     * the deadline passes. The connections found until then are returned, in
+     * findConnections order, in a result marked as timed out.
+     *
+     * @param origin the departure station
+     * @param destination the arrival station
+     * @param travelDate the date of travel
+     * @param deadlineNanos the System.nanoTime() value at which to stop
+     * @return all matching connections, or those found before the deadline
+     */
+    public SearchResult findConnections(Station origin, Station destination, LocalDate travelDate,
+                                        long deadlineNanos) {
+        int[] firstLegs = engine.firstLegs(origin, travelDate);
+        if (firstLegs.length < threshold) {
+            return engine.findConnections(origin, destination, travelDate, deadlineNanos);
+        }
+        AtomicBoolean stopped = new AtomicBoolean();
+        List<Candidate> candidates = pool.invoke(
+            new FirstLegTask(firstLegs, 0, firstLegs.length, origin, destination, travelDate, stopped, deadlineNanos));
+        return new SearchResult(ConnectionSearchEngine.toConnections(candidates), stopped.get());
+    }
+
+    /**
+     * Returns the number of worker threads of the pool.
+     *
+     * @return the configured parallelism
+     */
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Shuts down the worker threads, unless the pool was passed in by the caller.
+     */
+    @Override
+    public void close() {
+        if (ownsPool) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Expands the subtrees of firstLegs[from..to), splitting the range until one first leg remains.
+     * Without a stopped flag the tasks run to completion; with one, they stop at the deadline
+     * and set the flag.
+     */
+    private final class FirstLegTask extends RecursiveTask<List<Candidate>> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] firstLegs;
+        private final int from;
+        private final int to;
+        private final Station origin;
+        private final Station destination;
+        private final LocalDate travelDate;
+        private final AtomicBoolean stopped;
+        private final long deadlineNanos;
+
+        FirstLegTask(int[] firstLegs, int from, int to, Station origin, Station destination, LocalDate travelDate,
+                     AtomicBoolean stopped, long deadlineNanos) {
+            this.firstLegs = firstLegs;
+            this.from = from;
+            this.to = to;
+            this.origin = origin;
+            this.destination = destination;
+            this.travelDate = travelDate;
+            this.stopped = stopped;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        protected List<Candidate> compute() {
+            if (to - from <= 1) {
+                return stopped == null
+                    ? engine.collect(firstLegs, from, to, origin, destination, travelDate)
+                    : engine.collect(firstLegs, from, to, origin, destination, travelDate, deadlineNanos, stopped);
+            }
+            int middle = (from + to) >>> 1;
+            FirstLegTask left = new FirstLegTask(firstLegs, from, middle, origin, destination, travelDate,
+                                                 stopped, deadlineNanos);
+            FirstLegTask right = new FirstLegTask(firstLegs, middle, to, origin, destination, travelDate,
+                                                  stopped, deadlineNanos);
+            left.fork();
+            List<Candidate> merged = new ArrayList<>(right.compute());
+            merged.addAll(left.join());
+            return merged;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package service;
+
+import model.*;
+import repository.RouteCatalogue;
+import service.DepartureIndex.StationDepartures;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * ParetoConnectionSearch is a multi-criteria label-setting search that returns only the
+ * connections that are Pareto-optimal for arrival time, second-class price and number
+ * of transfers.
+ *
+ * A label records how a route on a given day (a trip) was reached: its total price so
+ * far, its number of legs and the label it continues. Labels are attached to the trip
+ * rather than just to the station, because the layover window of LayoverPolicy means an
+ * earlier arrival at a station does not always allow the same onward departures.
+ * Labels are expanded round by round (one more transfer per round), and a new label is
+ * discarded as soon as it appears when
+ * <ul>
+ *   <li>the same trip was already reached with fewer or equal transfers for a price that
+ *       is not higher, or</li>
+ *   <li>a connection already found at the destination arrives no later, costs no more and
+ *       has no more transfers than the best this label could ever reach.</li>
+ * </ul>
+ * Transfers are only followed between routes that price each class in the same
+ * currencies, and a label only joins the front once CandidateValidator accepts its legs.
+ * Connection objects are only built for the final Pareto front.
+ */
+public class ParetoConnectionSearch {
+    /**
+     * Default transfer limit, matching the 2-stop connections of ConnectionSearchEngine.
+     */
+    public static final int DEFAULT_MAX_TRANSFERS = ConnectionSearchEngine.MAX_LEGS - 1;
+
+    private final DepartureIndex index;
+
+    /**
+     * Builds the station index over the given routes.
+     *
+     * @param routes the routes to search
+     */
+    public ParetoConnectionSearch(List<Route> routes) {
+        this.index = new DepartureIndex(routes);
+    }
+
+    /**
+     * Builds the station index over the route table of a catalogue.
+     *
+     * @param catalogue the route catalogue to search
+     */
+    public ParetoConnectionSearch(RouteCatalogue catalogue) {
+        this.index = new DepartureIndex(catalogue.getRouteTable());
+    }
+
+    /**
+     * Finds the Pareto front with up to DEFAULT_MAX_TRANSFERS transfers.
+     *
+     * @param origin the departure station
+     * @param destination the arrival station
+     * @param travelDate the date of travel
+     * @return the Pareto-optimal connections, earliest arrival first
+     */
+    public List<Connection> findParetoConnections(Station origin, Station destination, LocalDate travelDate) {
+        return findParetoConnections(origin, destination, travelDate, DEFAULT_MAX_TRANSFERS);
+    }
+
+    /**
+     * Finds the connections that no other connection beats on arrival time, second-class
+     * price and number of transfers at the same time.
+     *
+     * @param origin the departure station
+     * @param destination the arrival station
+     * @param travelDate the date of travel
+     * @param maxTransfers the maximum number of transfers (0 for direct routes only)
+     * @return the Pareto-optimal connections, earliest arrival first (then cheapest)
+     */
+    public List<Connection> findParetoConnections(Station origin, Station destination, LocalDate travelDate,
+                                                  int maxTransfers) {
+        if (maxTransfers < 0) {
+            throw new IllegalArgumentException("Maximum number of transfers cannot be negative");
+        }
+        DayOfWeek dayOfWeek = travelDate.getDayOfWeek();
+        StationDepartures fromOrigin = index.departuresFrom(origin, dayOfWeek);
+        if (fromOrigin == null || origin.equals(destination)) {
+            return new ArrayList<>();
+        }
+
+        int destinationCode = index.codeId(destination);
+        TransferWindows windows = LayoverPolicy.getTransferWindows();
+        // Cheapest price any earlier or current round reached each trip with
+        long[] bestPrice = new long[index.tripCount()];
+        Arrays.fill(bestPrice, Long.MAX_VALUE);
+
+        List<Label> marked = new ArrayList<>();
+        for (int i = 0; i < fromOrigin.size(); i++) {
+            int trip = fromOrigin.routeIndex(i);
+            bestPrice[trip] = index.secondClassCents(trip);
+            marked.add(new Label(trip, index.secondClassCents(trip), 1, null));
+        }
+
+        List<Label> front = new ArrayList<>();
+        for (int legs = 1; legs <= maxTransfers + 1 && !marked.isEmpty(); legs++) {
+            for (Label label : marked) {
+                if (index.tripArrivalCode(label.trip) == destinationCode) {
+                    addToFront(label, front, windows);
+                }
+            }
+            if (legs == maxTransfers + 1) {
+                break;
+            }
+
+            List<Label> next = new ArrayList<>();
+            int nextLegs = legs + 1;
+            for (Label label : marked) {
+                if (index.tripArrivalCode(label.trip) == destinationCode) {
+                    continue;
+                }
+                index.forEachTransfer(label.trip, Integer.MAX_VALUE, dayOfWeek, windows, nextTrip -> {
+                    if (!CandidateValidator.sameCurrencies(index, label.trip, nextTrip)) {
+                        return;
+                    }
+                    long price = label.priceCents + index.secondClassCents(index.tripRouteIndex(nextTrip));
+                    if (price >= bestPrice[nextTrip] ||
+                        isDominated(index.tripArrivalMinute(nextTrip), price, nextLegs, front)) {
+                        return;
+                    }
+                    bestPrice[nextTrip] = price;
+                    next.add(new Label(nextTrip, price, nextLegs, label));
+                });
+            }
+            // A cheaper label found later in the round replaces an earlier one on the same trip
+            next.removeIf(label -> label.priceCents > bestPrice[label.trip]);
+            marked = next;
+        }
+
+        front.sort(Comparator.comparingInt((Label l) -> index.tripArrivalMinute(l.trip))
+                             .thenComparingLong(l -> l.priceCents)
+                             .thenComparingInt(l -> l.legs));
+        List<Connection> connections = new ArrayList<>(front.size());
+        for (Label label : front) {
+            connections.add(buildConnection(label));
+        }
+        return connections;
+    }
+
+    /**
+     * Checks whether a connection in the front arrives no later, costs no more and has
+     * no more legs than the given lower bounds.
+     */
+    private boolean isDominated(int arrivalMinute, long priceCents, int legs, List<Label> front) {
+        for (Label f : front) {
+            if (index.tripArrivalMinute(f.trip) <= arrivalMinute && f.priceCents <= priceCents && f.legs <= legs) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addToFront(Label label, List<Label> front, TransferWindows windows) {
+        int arrival = index.tripArrivalMinute(label.trip);
+        if (isDominated(arrival, label.priceCents, label.legs, front)) {
+            return;
+        }
+        int[] legs = label.trips();
+        if (CandidateValidator.totalDurationMinutes(index, legs, legs.length, windows) == CandidateValidator.REJECTED) {
+            return;
+        }
+        front.removeIf(f -> arrival <= index.tripArrivalMinute(f.trip) &&
+                            label.priceCents <= f.priceCents && label.legs <= f.legs);
+        front.add(label);
+    }
+
+    private Connection buildConnection(Label last) {
+        List<Route> legs = new ArrayList<>(last.legs);
+        for (int trip : last.trips()) {
+            legs.add(index.tripRoute(trip));
+        }
+        return new Connection(legs);
+    }
+
+    /**
+     * A way of reaching a trip: total second-class price in cents and number of legs.
+     */
+    private static final class Label {
+        private final int trip;
+        private final long priceCents;
+        private final int legs;
+        private final Label previous;
+
+        Label(int trip, long priceCents, int legs, Label previous) {
+            this.trip = trip;
+            this.priceCents = priceCents;
+            this.legs = legs;
+            this.previous = previous;
+        }
+
+        /**
+         * Returns the trips of the labels leading here, in travel order.
+         */
+        int[] trips() {
+            int[] trips = new int[legs];
+            for (Label l = this; l != null; l = l.previous) {
+                trips[l.legs - 1] = l.trip;
+            }
+            return trips;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package service;
+
+import model.*;
+import repository.RouteCatalogue;
+import service.DepartureIndex.StationDepartures;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RaptorSearch is a round-based (RAPTOR-style) search that returns, for each number
+ * of transfers, the connection arriving earliest at the destination, keeping only the
+ * Pareto-optimal ones (more transfers must mean an earlier arrival).
+ *
+ * Round k reaches every route that can be boarded with k transfers and that was not
+ * already reachable with fewer. Since the arrival of a route is fixed by the timetable,
+ * reaching it again with more transfers can never be better, so each route is expanded
+ * at most once and dominated combinations are never enumerated. Routes leaving after
+ * the best arrival found so far are pruned. A transfer is only followed between routes
+ * that price each class in the same currencies, and a connection is only built once
+ * CandidateValidator accepts its legs.
+ *
+ * Legs may continue on the days after the travel date when an overnight route arrives
+ * there, up to ConnectionSearchEngine.MAX_TRIP_DAYS days from the travel date.
+ */
+public class RaptorSearch {
+    /**
+     * Default transfer limit, matching the 2-stop connections of ConnectionSearchEngine.
+     */
+    public static final int DEFAULT_MAX_TRANSFERS = ConnectionSearchEngine.MAX_LEGS - 1;
+
+    private final DepartureIndex index;
+
+    /**
+     * Builds the station index over the given routes.
+     *
+     * @param routes the routes to search
+     */
+    public RaptorSearch(List<Route> routes) {
+        this.index = new DepartureIndex(routes);
+    }
+
+    /**
+     * Builds the station index over the route table of a catalogue.
+     *
+     * @param catalogue the route catalogue to search
+     */
+    public RaptorSearch(RouteCatalogue catalogue) {
+        this.index = new DepartureIndex(catalogue.getRouteTable());
+    }
+
+    /**
+     * Finds the Pareto set of arrival time and transfers with up to DEFAULT_MAX_TRANSFERS transfers.
+     *
+     * @param origin the departure station
+     * @param destination the arrival station
+     * @param travelDate the date of travel
+     * @return the Pareto-optimal connections, fewest transfers first
+     */
+    public List<Connection> findParetoConnections(Station origin, Station destination, LocalDate travelDate) {
+        return findParetoConnections(origin, destination, travelDate, DEFAULT_MAX_TRANSFERS);
+    }
+
+    /**
+     * Finds, for 0 up to maxTransfers transfers, the earliest-arriving connection, keeping
+     * only those that arrive strictly earlier than every connection with fewer transfers.
+     *
+     * @param origin the departure station
+     * @param destination the arrival station
+     * @param travelDate the date of travel
+     * @param maxTransfers the maximum number of transfers (0 for direct routes only)
+     * @return the Pareto-optimal connections, fewest transfers first
+     */
+    public List<Connection> findParetoConnections(Station origin, Station destination, LocalDate travelDate,
+                                                  int maxTransfers) {
+        if (maxTransfers < 0) {
+            throw new IllegalArgumentException("Maximum number of transfers cannot be negative");
+        }
+        List<Connection> pareto = new ArrayList<>();
+        DayOfWeek dayOfWeek = travelDate.getDayOfWeek();
+        StationDepartures fromOrigin = index.departuresFrom(origin, dayOfWeek);
+        if (fromOrigin == null || origin.equals(destination)) {
+            return pareto;
+        }
+
+        // round[t] is the number of legs needed to reach trip t (0 = not reached)
+        int[] round = new int[index.tripCount()];
+        int[] previous = new int[index.tripCount()];
+        int destinationCode = index.codeId(destination);
+        TransferWindows windows = LayoverPolicy.getTransferWindows();
+
+        List<Integer> marked = new ArrayList<>();
+        for (int i = 0; i < fromOrigin.size(); i++) {
+            int trip = fromOrigin.routeIndex(i);
+            round[trip] = 1;
+            previous[trip] = -1;
+            marked.add(trip);
+        }
+
+        int bestArrival = Integer.MAX_VALUE;
+        for (int legs = 1; legs <= maxTransfers + 1 && !marked.isEmpty(); legs++) {
+            int[] bestLegs = null;
+            for (int trip : marked) {
+                if (index.tripArrivalMinute(trip) < bestArrival &&
+                    index.tripArrivalCode(trip) == destinationCode) {
+                    int[] legsOfTrip = DepartureIndex.tripsEndingWith(trip, previous);
+                    if (CandidateValidator.totalDurationMinutes(index, legsOfTrip, legsOfTrip.length, windows)
+                            != CandidateValidator.REJECTED) {
+                        bestArrival = index.tripArrivalMinute(trip);
+                        bestLegs = legsOfTrip;
+                    }
+                }
+            }
+            if (bestLegs != null) {
+                pareto.add(buildConnection(bestLegs));
+            }
+
+            if (legs == maxTransfers + 1) {
+                break;
+            }
+            List<Integer> next = new ArrayList<>();
+            int nextLegs = legs + 1;
+            for (int trip : marked) {
+                if (index.tripArrivalCode(trip) == destinationCode) {
+                    continue;
+                }
+                // Only trips leaving before the best known arrival can improve on it
+                index.forEachTransfer(trip, bestArrival - 1, dayOfWeek, windows, nextTrip -> {
+                    if (round[nextTrip] == 0 && CandidateValidator.sameCurrencies(index, trip, nextTrip)) {
+                        round[nextTrip] = nextLegs;
+                        previous[nextTrip] = trip;
+                        next.add(nextTrip);
+                    }
+                });
+            }
+            marked = next;
+        }
+        return pareto;
+    }
+
+    private Connection buildConnection(int[] trips) {
+        List<Route> legs = new ArrayList<>(trips.length);
+        for (int trip : trips) {
+            legs.add(index.tripRoute(trip));
+        }
+        return new Connection(legs);
+    }
+}
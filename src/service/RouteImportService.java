@@ -0,0 +1,233 @@
+package service;
+
+import model.*;
+import parser.CSVRouteParser;
+import persistence.DataLoader;
+import repository.RouteCatalogue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * RouteImportService loads the route CSV into both the database and a RouteCatalogue.
+ *
+ * The file is read once by CSVRouteParser, and the same Route objects go to both
+ * places, so the database and the in-memory catalogue cannot disagree on a route. The
+ * database insert, which is by far the slower of the two, runs on its own thread while
+ * the catalogue stores the routes on the calling thread.
+ */
+public class RouteImportService {
+    private final StationRegistry stationRegistry;
+    private boolean databaseLoaded;
+
+    /**
+     * Creates an import that takes its stations from the given registry.
+     *
+     * @param stationRegistry the registry of the catalogue the routes are loaded into
+     */
+    public RouteImportService(StationRegistry stationRegistry) {
+        if (stationRegistry == null) {
+            throw new IllegalArgumentException("Station registry cannot be null");
+        }
+        this.stationRegistry = stationRegistry;
+    }
+
+    /**
+     * Parses the CSV file and passes each route to both the catalogue and the database
+     * as it is parsed. The database insert runs on its own thread and gets the routes in
+     * batches through a bounded queue, so neither the parser nor the import holds all the
+     * routes at once. Returns once both are done.
+     *
+     * @param csvFilePath path to the CSV file
+     * @param catalogue the catalogue whose routes are replaced
+     * @return the number of routes imported
+     * @throws IOException if the file cannot be read
+     * @throws SQLException if the database insert fails
+     */
+    public int importRoutes(String csvFilePath, RouteCatalogue catalogue)
+            throws IOException, SQLException {
+        return importRoutes(csvFilePath, catalogue, null);
+    }
+
+    /**
+     * Like importRoutes(String, RouteCatalogue), but loads the catalogue from a binary
+     * snapshot of the CSV file when there is a valid one, so the file is not parsed at
+     * all. The snapshot is only written once the database insert has succeeded, but the
+     * database may have been dropped or recreated since, so it is left alone only if its
+     * ROUTE table still holds at least as many routes as the snapshot; otherwise the
+     * routes of the snapshot are inserted. When the snapshot is missing or stale the file
+     * is imported as usual and a new snapshot is written afterwards. wasDatabaseLoaded()
+     * tells which happened.
+     *
+     * @param csvFilePath path to the CSV file
+     * @param catalogue the catalogue whose routes are replaced
+     * @param snapshotPath path of the snapshot file, or null to always parse the CSV file
+     * @return the number of routes imported
+     * @throws IOException if the file cannot be read
+     * @throws SQLException if the database insert fails
+     */
+    public int importRoutes(String csvFilePath, RouteCatalogue catalogue, String snapshotPath)
+            throws IOException, SQLException {
+        if (catalogue == null) {
+            throw new IllegalArgumentException("Route catalogue cannot be null");
+        }
+        databaseLoaded = false;
+        if (snapshotPath != null && catalogue.loadSnapshot(snapshotPath, csvFilePath)) {
+            if (DataLoader.countRoutes() < catalogue.getRouteCount()) {
+                DataLoader.loadRoutes(catalogue.getRouteTable().routes());
+                databaseLoaded = true;
+            }
+            return catalogue.getRouteCount();
+        }
+
+        DatabaseFeed feed = new DatabaseFeed();
+        FutureTask<Void> database = new FutureTask<>(() -> {
+            DataLoader.loadRoutes(feed);
+            return null;
+        });
+        feed.consumer = database;
+        Thread databaseThread = new Thread(database, "route-import-db");
+        databaseThread.setDaemon(true);
+        databaseThread.start();
+
+        try (Stream<Route> routes = new CSVRouteParser(stationRegistry).streamRoutes(csvFilePath)) {
+            catalogue.loadRoutes(routes.peek(feed::add));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            feed.finish();
+        }
+
+        try {
+            database.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while loading routes into the database", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new SQLException("Database load failed", cause);
+        }
+        databaseLoaded = true;
+        if (snapshotPath != null) {
+            try {
+                catalogue.writeSnapshot(snapshotPath, csvFilePath);
+            } catch (IOException e) {
+                System.err.println("Could not write route snapshot " + snapshotPath + ": " + e.getMessage());
+            }
+        }
+        return catalogue.getRouteCount();
+    }
+
+    /**
+     * Returns whether the last importRoutes call inserted routes into the database. It is
+     * false when a valid snapshot was loaded and the database already held its routes.
+     *
+     * @return true if the database was loaded, false if it was left alone
+     */
+    public boolean wasDatabaseLoaded() {
+        return databaseLoaded;
+    }
+
+    /**
+     * Hands routes from the parsing thread to the database thread in batches. An empty
+     * batch marks the end. If the database thread stops early, e.g. because it cannot
+     * connect, later routes are dropped instead of blocking the catalogue load; the
+     * failure is reported once the catalogue is loaded.
+     */
+    private static final class DatabaseFeed implements Iterable<Route> {
+        private static final int BATCH_SIZE = 100;
+        private static final int QUEUE_CAPACITY = 16;
+        private static final Route[] END = new Route[0];
+
+        private final BlockingQueue<Route[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private Future<?> consumer;
+        private Route[] batch = new Route[BATCH_SIZE];
+        private int batchSize;
+
+        void add(Route route) {
+            batch[batchSize++] = route;
+            if (batchSize == BATCH_SIZE) {
+                send(batch);
+                batch = new Route[BATCH_SIZE];
+                batchSize = 0;
+            }
+        }
+
+        void finish() {
+            if (batchSize > 0) {
+                send(Arrays.copyOf(batch, batchSize));
+                batchSize = 0;
+            }
+            send(END);
+        }
+
+        private void send(Route[] routes) {
+            try {
+                while (!queue.offer(routes, 100, TimeUnit.MILLISECONDS)) {
+                    if (consumer.isDone()) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while importing routes", e);
+            }
+        }
+
+        @Override
+        public Iterator<Route> iterator() {
+            return new Iterator<Route>() {
+                private Route[] current = new Route[0];
+                private int position;
+                private boolean ended;
+
+                @Override
+                public boolean hasNext() {
+                    while (!ended && position == current.length) {
+                        current = take();
+                        position = 0;
+                        ended = current == END;
+                    }
+                    return !ended;
+                }
+
+                @Override
+                public Route next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return current[position++];
+                }
+            };
+        }
+
+        private Route[] take() {
+            try {
+                return queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while importing routes", e);
+            }
+        }
+    }
+}
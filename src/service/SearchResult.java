@@ -0,0 +1,48 @@
+package service;
+
+import model.*;
+
+import java.util.List;
+
+/**
+ * The connections returned by a SearchService query, and whether the query ran out of
+ * time. A timed-out result holds the connections found before the deadline, which may
+ * be none of them; they are valid connections, but better ones may have been missed.
+ */
+public final class SearchResult {
+    private final List<Connection> connections;
+    private final boolean timedOut;
+
+    SearchResult(List<Connection> connections, boolean timedOut) {
+        this.connections = List.copyOf(connections);
+        this.timedOut = timedOut;
+    }
+
+    static SearchResult timedOut() {
+        return new SearchResult(List.of(), true);
+    }
+
+    /**
+     * Returns the connections found, shortest total duration first.
+     *
+     * @return an unmodifiable list of connections
+     */
+    public List<Connection> getConnections() {
+        return connections;
+    }
+
+    /**
+     * Returns whether the deadline passed (or the search was cancelled) before every
+     * connection was found.
+     *
+     * @return true if the connections may be incomplete
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchResult{connections=" + connections.size() + ", timedOut=" + timedOut + "}";
+    }
+}
@@ -1,21 +1,243 @@
-/*package service;
+package service;
 
 import model.*;
 import repository.RouteCatalogue;
+
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * SearchService answers route and connection searches from many threads at once.
+ *
+ * Searches run on a snapshot of the RouteCatalogue: a copy of its routes with its own
+ * search engine and route index, which nothing modifies after it is built. When the
+ * catalogue version changes, the next query builds a new snapshot and swaps it in;
+ * queries already running keep the snapshot they started with. Each snapshot answers
+ * connection searches through a CachedConnectionSearch, so a repeated query for the same
+ * stations and day of the week does not search again; the cache goes with its snapshot.
+ * Other SearchStrategy engines are built over a snapshot the first time they are asked for.
+ * ALL_CONNECTIONS_PARALLEL searches run their first-leg tasks on one fork/join pool
+ * shared by all snapshots, with as many threads as the service has workers.
+ *
+ * Connection searches run on a fixed number of worker threads with a bounded queue, and
+ * every query has a deadline. When the deadline passes, the search stops expanding and
+ * returns the connections found so far, marked as timed out, so one expensive 2-transfer
+ * search cannot hold up the other users. When the queue is full, new searches are
+ * rejected instead of piling up.
+ */
+public class SearchService implements AutoCloseable {
+    /**
+     * Default time a connection search may take, including time spent in the queue.
+     */
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(2);
+
+    /**
+     * Default number of searches that may wait for a worker thread.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    // How long past its deadline a caller waits for a running search to hand back what it found
+    private static final Duration RESULT_GRACE = Duration.ofMillis(200);
+
+    private final RouteCatalogue catalogue;
+    private final ThreadPoolExecutor executor;
+    private final ForkJoinPool forkJoinPool;
+    private final Duration defaultTimeout;
+    private volatile Snapshot snapshot;
+
+    /**
+     * Creates a service with one worker per available processor, DEFAULT_QUEUE_CAPACITY
+     * and DEFAULT_TIMEOUT.
+     *
+     * @param catalogue the catalogue to search
+     */
+    public SearchService(RouteCatalogue catalogue) {
+        this(catalogue, Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Creates a service with its own worker threads.
+     *
+     * @param catalogue the catalogue to search
+     * @param threads the number of worker threads
+     * @param queueCapacity how many searches may wait for a worker
+     * @param defaultTimeout the deadline of searches that do not give one
+     */
+    public SearchService(RouteCatalogue catalogue, int threads, int queueCapacity, Duration defaultTimeout) {
+        if (catalogue == null) {
+            throw new IllegalArgumentException("Route catalogue cannot be null");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be at least 1");
+        }
+        checkTimeout(defaultTimeout);
+        this.catalogue = catalogue;
+        this.defaultTimeout = defaultTimeout;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                Thread thread = new Thread(runnable, "search-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.forkJoinPool = new ForkJoinPool(threads);
+        this.snapshot = new Snapshot(catalogue, forkJoinPool);
+    }
+
+    private static void checkTimeout(Duration timeout) {
+        if (timeout == null || timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
+    }
+
+    /**
+     * Finds connections with the default timeout, see findConnections(Station, Station, LocalDate, Duration).
+     *
+     * @param origin the departure station
+     * @param destination the arrival station
+     * @param travelDate the date of travel
+     * @return the connections found, and whether the search timed out
+     */
+    public SearchResult findConnections(Station origin, Station destination, LocalDate travelDate) {
+        return findConnections(origin, destination, travelDate, defaultTimeout);
+    }
+
+    /**
+     * Finds the same connections as ConnectionSearchEngine.findConnections on a worker
+     * thread. If the search is still queued when the timeout passes, it is cancelled and an
+     * empty timed-out result is returned. A running search stops by itself at the deadline
+     * and returns the connections found so far in a timed-out result. The caller waits at
+     * most RESULT_GRACE (200 ms) longer for those; after that the search is cancelled with
+     * an interrupt and an empty timed-out result is returned.
+     *
+     * @param origin the departure station
+     * @param destination the arrival station
+     * @param travelDate the date of travel
+     * @param timeout how long the search may take, including time in the queue
+     * @return the connections found, and whether the search timed out
+     * @throws RejectedExecutionException if the queue is full or the service is closed
+     */
+    public SearchResult findConnections(Station origin, Station destination, LocalDate travelDate,
+                                        Duration timeout) {
+        return findConnections(origin, destination, travelDate, SearchStrategy.ALL_CONNECTIONS, timeout);
+    }
+
+    /**
+     * Like findConnections(Station, Station, LocalDate, Duration), but runs the engine of
+     * the given strategy. ALL_CONNECTIONS_PARALLEL stops at the deadline like
+     * ALL_CONNECTIONS; the other strategies sweep the timetable once and do not stop
+     * early, so only the time limit on waiting for them applies.
+     *
+     * @param origin the departure station
+     * @param destination the arrival station
+     * @param travelDate the date of travel
+     * @param strategy the engine to run
+     * @param timeout how long the search may take, including time in the queue
+     * @return the connections found, and whether the search timed out
+     * @throws RejectedExecutionException if the queue is full or the service is closed
+     */
+    public SearchResult findConnections(Station origin, Station destination, LocalDate travelDate,
+                                        SearchStrategy strategy, Duration timeout) {
+        checkTimeout(timeout);
+        long deadline = System.nanoTime() + timeout.toNanos();
+        AtomicBoolean started = new AtomicBoolean();
+        Future<SearchResult> future = submit(origin, destination, travelDate, strategy, deadline, started);
+        try {
+            try {
+                return future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                // Only a search that has not started yet is dropped; a running one is about
+                // to return what it found
+                if (!started.get() && future.cancel(false)) {
+                    return SearchResult.timedOut();
+                }
+                try {
+                    return future.get(RESULT_GRACE.toNanos(), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException late) {
+                    future.cancel(true);
+                    return SearchResult.timedOut();
+                }
+            }
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return SearchResult.timedOut();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
 
-public class SearchService {
-    private RouteCatalogue routeCatalogue;
+    /**
+     * Starts a connection search without waiting for it. Cancelling the returned future
+     * with cancel(true) stops the search.
+     *
+     * @param origin the departure station
+     * @param destination the arrival station
+     * @param travelDate the date of travel
+     * @param timeout how long the search may take, including time in the queue
+     * @return the pending result
+     * @throws RejectedExecutionException if the queue is full or the service is closed
+     */
+    public Future<SearchResult> submitConnectionSearch(Station origin, Station destination, LocalDate travelDate,
+                                                       Duration timeout) {
+        checkTimeout(timeout);
+        return submit(origin, destination, travelDate, SearchStrategy.ALL_CONNECTIONS,
+                      System.nanoTime() + timeout.toNanos(), new AtomicBoolean());
+    }
 
-    public SearchService(RouteCatalogue routeCatalogue) {
-        this.routeCatalogue = routeCatalogue;
+    private Future<SearchResult> submit(Station origin, Station destination, LocalDate travelDate,
+                                        SearchStrategy strategy, long deadline, AtomicBoolean started) {
+        if (origin == null || destination == null || travelDate == null) {
+            throw new IllegalArgumentException("Origin, destination and travel date cannot be null");
+        }
+        if (strategy == null) {
+            throw new IllegalArgumentException("Search strategy cannot be null");
+        }
+        Snapshot current = currentSnapshot();
+        return executor.submit(() -> {
+            started.set(true);
+            return current.search(origin, destination, travelDate, strategy, deadline);
+        });
     }
 
+    private static RuntimeException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IllegalStateException("Search failed", cause);
+    }
+
+    /**
+     * Finds the routes matching the criteria, see RouteCatalogue.find.
+     *
+     * @param criteria the search criteria
+     * @return the matching routes, in catalogue order
+     */
     public List<Route> searchRoutes(SearchCriteria criteria) {
-        return routeCatalogue.find(criteria);
+        // Nothing changes the routes of a snapshot, so its catalogue can answer many finds at once
+        return new ArrayList<>(currentSnapshot().catalogue.find(criteria));
     }
 
     public List<Route> searchAndSort(SearchCriteria criteria, SortKey sortKey) {
@@ -28,19 +250,19 @@ public class SearchService {
 
         switch (sortKey) {
             case DEPARTURE_TIME:
-                sortedRoutes.sort(Comparator.comparing(Route::getDepartureTime));
+                sortedRoutes.sort(Comparator.comparingInt(Route::getDepartureMinuteOfDay));
                 break;
             case ARRIVAL_TIME:
-                sortedRoutes.sort(Comparator.comparing(Route::getArrivalTime));
+                sortedRoutes.sort(Comparator.comparingInt(Route::getArrivalMinuteOfDay));
                 break;
             case DURATION:
-                sortedRoutes.sort(Comparator.comparing(this::calculateDuration));
+                sortedRoutes.sort(Comparator.comparingInt(Route::getDurationMinutes));
                 break;
             case PRICE_FIRST_CLASS:
-                sortedRoutes.sort(Comparator.comparing(route -> route.getPriceFirstClass().getAmount()));
+                sortedRoutes.sort(Comparator.comparingLong(route -> route.getPriceFirstClass().getMinorUnits()));
                 break;
             case PRICE_SECOND_CLASS:
-                sortedRoutes.sort(Comparator.comparing(route -> route.getPriceSecondClass().getAmount()));
+                sortedRoutes.sort(Comparator.comparingLong(route -> route.getPriceSecondClass().getMinorUnits()));
                 break;
             case DEPARTURE_STATION:
                 sortedRoutes.sort(Comparator.comparing(route -> route.getDepartureStation().getName()));
@@ -72,16 +294,116 @@ public class SearchService {
             Money routePrice = (classType == ClassType.FIRST) ?
                 route.getPriceFirstClass() : route.getPriceSecondClass();
 
-            if (routePrice.getAmount().compareTo(maxPrice.getAmount()) <= 0) {
+            if (routePrice.getMinorUnits() <= maxPrice.getMinorUnits()) {
                 filtered.add(route);
             }
         }
         return filtered;
     }
 
-    private long calculateDuration(Route route) {
-        return route.getArrivalTime().toSecondOfDay() - route.getDepartureTime().toSecondOfDay();
+    private Snapshot currentSnapshot() {
+        Snapshot current = snapshot;
+        if (current.version != catalogue.getVersion()) {
+            synchronized (this) {
+                current = snapshot;
+                if (current.version != catalogue.getVersion()) {
+                    current = new Snapshot(catalogue, forkJoinPool);
+                    snapshot = current;
+                }
+            }
+        }
+        return current;
     }
-}
 
- */
\ No newline at end of file
+    /**
+     * Returns the number of searches waiting for a worker thread.
+     *
+     * @return the queue length
+     */
+    public int getQueuedSearchCount() {
+        return executor.getQueue().size();
+    }
+
+    public Duration getDefaultTimeout() {
+        return defaultTimeout;
+    }
+
+    /**
+     * Stops the worker threads, cancelling running and queued searches.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        forkJoinPool.shutdown();
+    }
+
+    /**
+     * A copy of the catalogue at one version, with the cached connection search built over it.
+     */
+    private static final class Snapshot {
+        private final long version;
+        private final RouteCatalogue catalogue;
+        private final CachedConnectionSearch search;
+
+        // The other engines are only built when a query asks for their strategy
+        private final Lazy<ConnectionScanSearch> connectionScan;
+        private final Lazy<RaptorSearch> raptor;
+        private final Lazy<ParetoConnectionSearch> pareto;
+        private final Lazy<ParallelConnectionSearch> parallel;
+
+        Snapshot(RouteCatalogue source, ForkJoinPool forkJoinPool) {
+            this.version = source.getVersion();
+            // Copies the table columns, without creating a Route object per route
+            this.catalogue = source.copy();
+            this.search = new CachedConnectionSearch(catalogue);
+            this.connectionScan = new Lazy<>(() -> new ConnectionScanSearch(catalogue));
+            this.raptor = new Lazy<>(() -> new RaptorSearch(catalogue));
+            this.pareto = new Lazy<>(() -> new ParetoConnectionSearch(catalogue));
+            this.parallel = new Lazy<>(() -> new ParallelConnectionSearch(
+                new ConnectionSearchEngine(catalogue), forkJoinPool, ParallelConnectionSearch.DEFAULT_THRESHOLD));
+        }
+
+        SearchResult search(Station origin, Station destination, LocalDate travelDate,
+                            SearchStrategy strategy, long deadline) {
+            switch (strategy) {
+                case EARLIEST_ARRIVAL:
+                    Connection earliest = connectionScan.get().findEarliestArrival(origin, destination, travelDate);
+                    return new SearchResult(earliest == null ? List.of() : List.of(earliest), false);
+                case EARLIEST_ARRIVAL_BY_TRANSFERS:
+                    return new SearchResult(raptor.get().findParetoConnections(origin, destination, travelDate), false);
+                case PARETO_OPTIMAL:
+                    return new SearchResult(pareto.get().findParetoConnections(origin, destination, travelDate), false);
+                case ALL_CONNECTIONS_PARALLEL:
+                    return parallel.get().findConnections(origin, destination, travelDate, deadline);
+                default:
+                    return search.findConnections(origin, destination, travelDate, deadline);
+            }
+        }
+    }
+
+    /**
+     * A value built by the first thread that asks for it and then shared by all.
+     */
+    private static final class Lazy<T> {
+        private final Supplier<T> factory;
+        private volatile T value;
+
+        Lazy(Supplier<T> factory) {
+            this.factory = factory;
+        }
+
+        T get() {
+            T current = value;
+            if (current == null) {
+                synchronized (this) {
+                    current = value;
+                    if (current == null) {
+                        current = factory.get();
+                        value = current;
+                    }
+                }
+            }
+            return current;
+        }
+    }
+}
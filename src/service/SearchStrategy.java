@@ -0,0 +1,17 @@
+package service;
+
+/**
+ * The engine SearchService.findConnections runs, and so which connections it returns.
+ */
+public enum SearchStrategy {
+    // Every connection with up to ConnectionSearchEngine.MAX_LEGS legs, shortest first
+    ALL_CONNECTIONS,
+    // The one connection arriving earliest, with any number of transfers (ConnectionScanSearch)
+    EARLIEST_ARRIVAL,
+    // The earliest arrival for each number of transfers, if it beats fewer transfers (RaptorSearch)
+    EARLIEST_ARRIVAL_BY_TRANSFERS,
+    // Every connection not beaten on arrival, second-class price and transfers at once (ParetoConnectionSearch)
+    PARETO_OPTIMAL,
+    // ALL_CONNECTIONS split by first leg over a fork/join pool, not cached (ParallelConnectionSearch)
+    ALL_CONNECTIONS_PARALLEL
+}
@@ -0,0 +1,71 @@
+import parser.CSVRouteParser;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Measures how many CSV rows per second CSVRouteParser.parseRoutes handles.
+ *
+ * The bundled network is repeated until the file has the requested number of rows, then
+ * parsed several times; the best run is reported. Only parseRoutes is used, so the same
+ * class runs against older versions of the parser (see run_parser_benchmark.sh).
+ *
+ * Usage: java ParserBenchmark [csv file] [rows] [runs]
+ */
+public class ParserBenchmark {
+    private static final String DEFAULT_CSV = "src/db/eu_rail_network.csv";
+    private static final int DEFAULT_ROWS = 600_000;
+    private static final int DEFAULT_RUNS = 8;
+
+    public static void main(String[] args) throws IOException {
+        Path source = Paths.get(args.length > 0 ? args[0] : DEFAULT_CSV);
+        int rows = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ROWS;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_RUNS;
+
+        Path input = Files.createTempFile("parser-benchmark", ".csv");
+        try {
+            writeRepeated(source, input, rows);
+
+            // Parse errors and warnings would dominate the timing, so they are discarded
+            PrintStream err = System.err;
+            System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+            long best = Long.MAX_VALUE;
+            int parsed = 0;
+            try {
+                for (int run = 0; run < runs; run++) {
+                    long start = System.nanoTime();
+                    parsed = new CSVRouteParser().parseRoutes(input.toString()).size();
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+            } finally {
+                System.setErr(err);
+            }
+
+            System.out.printf("rows=%d routes=%d best of %d runs: %d ms, %.0f rows/s%n",
+                              rows, parsed, runs, best / 1_000_000, rows / (best / 1e9));
+        } finally {
+            Files.deleteIfExists(input);
+        }
+    }
+
+    private static void writeRepeated(Path source, Path target, int rows) throws IOException {
+        List<String> lines = Files.readAllLines(source);
+        if (lines.size() < 2) {
+            throw new IOException("No data rows in " + source);
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(target)) {
+            writer.write(lines.get(0));
+            writer.newLine();
+            for (int written = 0; written < rows; written++) {
+                writer.write(lines.get(1 + written % (lines.size() - 1)));
+                writer.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+import model.*;
+import parser.CSVRouteParser;
+import service.ConnectionSearchEngine;
+import service.SortKey;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Measures how many bytes ConnectionSearchEngine allocates per search.
+ *
+ * Every (origin, destination, day of week) triple of the network is searched once to
+ * find those with results; those are then searched again several times with
+ * findConnections and with findTopConnections (K=1, for three sort keys), and the bytes
+ * allocated by this thread are divided by the number of searches. Triples without
+ * results are reported separately. The best of several runs is printed, so warm-up and
+ * JIT compilation do not count. Only constructors and methods that older versions of the
+ * engine also have are used (see run_search_allocation_benchmark.sh).
+ *
+ * Needs a JVM whose ThreadMXBean implements com.sun.management.ThreadMXBean.
+ *
+ * Usage: java SearchAllocationBenchmark [csv file] [repeats] [runs]
+ */
+public class SearchAllocationBenchmark {
+    private static final String DEFAULT_CSV = "src/db/eu_rail_network.csv";
+    private static final int DEFAULT_REPEATS = 20;
+    private static final int DEFAULT_RUNS = 3;
+    private static final SortKey[] TOP_KEYS = {SortKey.DURATION, SortKey.PRICE_SECOND_CLASS, SortKey.DEPARTURE_STATION};
+    // A Monday, so that the seven dates cover every day of the week
+    private static final LocalDate FIRST_DATE = LocalDate.of(2026, 10, 19);
+
+    public static void main(String[] args) throws IOException {
+        String csv = args.length > 0 ? args[0] : DEFAULT_CSV;
+        int repeats = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_REPEATS;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_RUNS;
+
+        // Parse warnings are not part of the measurement
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+        List<Route> routes;
+        try {
+            routes = new CSVRouteParser().parseRoutes(csv);
+        } finally {
+            System.setErr(err);
+        }
+        ConnectionSearchEngine engine = new ConnectionSearchEngine(routes);
+
+        Set<Station> stations = new LinkedHashSet<>();
+        for (Route route : routes) {
+            stations.add(route.getDepartureStation());
+            stations.add(route.getArrivalStation());
+        }
+        List<Query> withResults = new ArrayList<>();
+        List<Query> withoutResults = new ArrayList<>();
+        for (Station origin : stations) {
+            for (Station destination : stations) {
+                for (int day = 0; day < 7; day++) {
+                    Query query = new Query(origin, destination, FIRST_DATE.plusDays(day));
+                    if (engine.findConnections(origin, destination, query.travelDate).isEmpty()) {
+                        withoutResults.add(query);
+                    } else {
+                        withResults.add(query);
+                    }
+                }
+            }
+        }
+
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        double bestAll = Double.MAX_VALUE;
+        double bestTop = Double.MAX_VALUE;
+        double bestEmptyAll = Double.MAX_VALUE;
+        double bestEmptyTop = Double.MAX_VALUE;
+        for (int run = 0; run < runs; run++) {
+            long start = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < repeats; i++) {
+                searchAll(engine, withResults);
+            }
+            long afterAll = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < repeats; i++) {
+                searchTop(engine, withResults);
+            }
+            long afterTop = threads.getThreadAllocatedBytes(thread);
+            searchAll(engine, withoutResults);
+            long afterEmptyAll = threads.getThreadAllocatedBytes(thread);
+            searchTop(engine, withoutResults);
+            long afterEmptyTop = threads.getThreadAllocatedBytes(thread);
+
+            bestAll = Math.min(bestAll, (afterAll - start) / (double) (repeats * withResults.size()));
+            bestTop = Math.min(bestTop, (afterTop - afterAll) /
+                                        (double) (repeats * TOP_KEYS.length * withResults.size()));
+            bestEmptyAll = Math.min(bestEmptyAll, (afterEmptyAll - afterTop) / (double) withoutResults.size());
+            bestEmptyTop = Math.min(bestEmptyTop, (afterEmptyTop - afterEmptyAll) /
+                                                  (double) (TOP_KEYS.length * withoutResults.size()));
+        }
+
+        System.out.printf("triples with results=%d, without=%d, best of %d runs%n",
+                          withResults.size(), withoutResults.size(), runs);
+        System.out.printf("with results:    findConnections %.0f B/search, findTopConnections(K=1) %.0f B/search%n",
+                          bestAll, bestTop);
+        System.out.printf("without results: findConnections %.0f B/search, findTopConnections(K=1) %.0f B/search%n",
+                          bestEmptyAll, bestEmptyTop);
+    }
+
+    private static int searchAll(ConnectionSearchEngine engine, List<Query> queries) {
+        int found = 0;
+        for (Query query : queries) {
+            found += engine.findConnections(query.origin, query.destination, query.travelDate).size();
+        }
+        return found;
+    }
+
+    private static int searchTop(ConnectionSearchEngine engine, List<Query> queries) {
+        int found = 0;
+        for (Query query : queries) {
+            for (SortKey key : TOP_KEYS) {
+                found += engine.findTopConnections(query.origin, query.destination, query.travelDate, key, 1).size();
+            }
+        }
+        return found;
+    }
+
+    private static final class Query {
+        private final Station origin;
+        private final Station destination;
+        private final LocalDate travelDate;
+
+        Query(Station origin, Station destination, LocalDate travelDate) {
+            this.origin = origin;
+            this.destination = destination;
+            this.travelDate = travelDate;
+        }
+    }
+}
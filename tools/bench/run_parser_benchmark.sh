@@ -0,0 +1,30 @@
+#!/bin/bash
+# Runs ParserBenchmark against the working tree, or against the src/ of a git commit.
+#
+# Usage: tools/bench/run_parser_benchmark.sh [git-ref] [rows] [runs]
+#   tools/bench/run_parser_benchmark.sh              # current sources
+#   tools/bench/run_parser_benchmark.sh HEAD~5       # an earlier parser, for comparison
+
+set -e
+cd "$(dirname "$0")/../.."
+
+REF="$1"
+shift || true
+
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+if [ -n "$REF" ]; then
+    echo "=== Benchmarking parser at $REF ==="
+    git archive "$REF" src | tar -x -C "$WORK"
+    SRC="$WORK/src"
+else
+    echo "=== Benchmarking parser in working tree ==="
+    SRC="src"
+fi
+
+mkdir -p "$WORK/bin"
+find "$SRC" -name "*.java" > "$WORK/sources"
+javac -encoding UTF-8 -cp "lib/*" -d "$WORK/bin" @"$WORK/sources" tools/bench/ParserBenchmark.java
+
+java -Xmx3g -cp "$WORK/bin:lib/*" ParserBenchmark src/db/eu_rail_network.csv "$@"